@@ -0,0 +1,72 @@
+package poofinal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Monta listas de retirada "primeiro que vence, primeiro que sai" a partir dos lotes de cada
+// medicamento já ordenados por validade no Estoque. Não depende da interface gráfica.
+class AlocadorFEFO {
+    static class LinhaRetirada {
+        private String local;
+        private int medId;
+        private String validade;
+        private int quantidade;
+
+        public LinhaRetirada(String local, int medId, String validade, int quantidade) {
+            this.local = local;
+            this.medId = medId;
+            this.validade = validade;
+            this.quantidade = quantidade;
+        }
+
+        public String getLocal() {
+            return local;
+        }
+
+        public int getMedId() {
+            return medId;
+        }
+
+        public String getValidade() {
+            return validade;
+        }
+
+        public int getQuantidade() {
+            return quantidade;
+        }
+    }
+
+    private Estoque estoque;
+
+    public AlocadorFEFO(Estoque estoque) {
+        this.estoque = estoque;
+    }
+
+    // demanda: medId -> quantidade; as linhas saem na ordem de iteração da demanda e,
+    // dentro de cada medicamento, da validade mais próxima para a mais distante
+    public List<LinhaRetirada> alocar(Map<Integer, Integer> demanda) {
+        List<LinhaRetirada> linhas = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> item : demanda.entrySet()) {
+            int medId = item.getKey();
+            int quantidadeNecessaria = item.getValue();
+
+            for (Lote lote : estoque.getLotesPorValidade(medId)) {
+                if (quantidadeNecessaria <= 0) {
+                    break;
+                }
+                if (lote.getDiaValid() == Datas.SEM_DATA) {
+                    continue;
+                }
+                int disponivel = estoque.getSaldo(lote.getLocal(), medId);
+                if (disponivel <= 0) {
+                    continue;
+                }
+                int quantidadeRetirada = Math.min(quantidadeNecessaria, disponivel);
+                linhas.add(new LinhaRetirada(lote.getLocal(), medId, lote.getValidade(), quantidadeRetirada));
+                quantidadeNecessaria -= quantidadeRetirada;
+            }
+        }
+        return linhas;
+    }
+}
@@ -1,3 +1,5 @@
+package poofinal;
+
 import javax.swing.*;
 import java.awt.*;
 import java.util.regex.Pattern;
@@ -107,6 +109,9 @@ public class CadastroPanel extends JPanel {
 
             if (cadastro.getMedicamentos().size() > previousId) {
                 JOptionPane.showMessageDialog(CadastroPanel.this, "Medicamento cadastrado com sucesso!");
+            } else {
+                JOptionPane.showMessageDialog(CadastroPanel.this, "Não foi possível gravar o medicamento no arquivo do cadastro.", "Erro", JOptionPane.ERROR_MESSAGE);
+                return;
             }
 
             nomeField.setText("");
@@ -0,0 +1,134 @@
+package poofinal;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+// Executa as consultas dos painéis fora da thread da interface. As linhas chegam à tabela
+// em lotes, com um único evento por lote, e uma consulta nova cancela a anterior.
+class ConsultaTabela {
+    interface Consulta {
+        void executar(Consumer<Object[]> linhas);
+    }
+
+    private static final int TAMANHO_LOTE = 500;
+    // Linhas inseridas por vez na thread da interface, para que ela nunca fique ocupada por muito tempo
+    private static final int LINHAS_POR_VEZ = 2000;
+
+    private final DefaultTableModel tableModel;
+    private SwingWorker<Integer, List<Object[]>> atual;
+
+    public ConsultaTabela(DefaultTableModel tableModel) {
+        this.tableModel = tableModel;
+    }
+
+    // Deve ser chamado na thread da interface, que é onde a tabela é limpa e preenchida
+    public void executar(Consulta consulta) {
+        executar(consulta, null);
+    }
+
+    // aoConcluir roda na thread da interface quando a última linha da consulta já está na tabela;
+    // não roda se a consulta falhar ou for cancelada por uma nova
+    public void executar(Consulta consulta, Runnable aoConcluir) {
+        cancelar();
+        tableModel.setRowCount(0);
+
+        atual = new SwingWorker<>() {
+            private final ArrayDeque<Object[]> pendentes = new ArrayDeque<>();
+            // done pode chegar antes dos últimos lotes publicados: a consulta só termina quando
+            // todas as linhas contadas em doInBackground foram inseridas
+            private int total = -1;
+            private int inseridas;
+
+            @Override
+            protected Integer doInBackground() {
+                List<Object[]> lote = new ArrayList<>(TAMANHO_LOTE);
+                int[] contadas = new int[1];
+                consulta.executar(linha -> {
+                    if (isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    contadas[0]++;
+                    lote.add(linha);
+                    if (lote.size() == TAMANHO_LOTE) {
+                        publish(new ArrayList<>(lote));
+                        lote.clear();
+                    }
+                });
+                if (!lote.isEmpty()) {
+                    publish(lote);
+                }
+                return contadas[0];
+            }
+
+            @Override
+            protected void process(List<List<Object[]>> lotes) {
+                boolean ocioso = pendentes.isEmpty();
+                for (List<Object[]> lote : lotes) {
+                    pendentes.addAll(lote);
+                }
+                if (ocioso) {
+                    inserirPendentes();
+                }
+            }
+
+            private void inserirPendentes() {
+                // Lotes publicados antes do cancelamento ainda podem chegar aqui
+                if (isCancelled()) {
+                    pendentes.clear();
+                    return;
+                }
+                @SuppressWarnings("unchecked")
+                Vector<Vector<Object>> dados = (Vector<Vector<Object>>) (Vector<?>) tableModel.getDataVector();
+                int primeira = dados.size();
+                for (int i = 0; i < LINHAS_POR_VEZ && !pendentes.isEmpty(); i++) {
+                    dados.add(new Vector<>(Arrays.asList(pendentes.poll())));
+                }
+                inseridas += dados.size() - primeira;
+                tableModel.fireTableRowsInserted(primeira, dados.size() - 1);
+                if (!pendentes.isEmpty()) {
+                    SwingUtilities.invokeLater(this::inserirPendentes);
+                } else {
+                    concluir();
+                }
+            }
+
+            private void concluir() {
+                if (aoConcluir != null && !isCancelled() && inseridas == total) {
+                    aoConcluir.run();
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    total = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                if (pendentes.isEmpty()) {
+                    concluir();
+                }
+            }
+        };
+        atual.execute();
+    }
+
+    public void cancelar() {
+        if (atual != null) {
+            atual.cancel(true);
+            atual = null;
+        }
+    }
+}
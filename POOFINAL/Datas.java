@@ -0,0 +1,88 @@
+package poofinal;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Datas no formato dd/MM/yyyy convertidas uma única vez para dias desde 01/01/1970,
+// para que as comparações do estoque sejam comparações de inteiros.
+final class Datas {
+    public static final int SEM_DATA = Integer.MIN_VALUE;
+
+    private static final DateTimeFormatter FORMATO = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final int[] DIAS_NO_MES = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    // Poucas datas distintas se repetem em muitos registros; cada uma é formatada uma vez só
+    private static final Map<Integer, String> FORMATADAS = new ConcurrentHashMap<>();
+
+    private Datas() {
+    }
+
+    // Retorna SEM_DATA para textos vazios ou datas inexistentes
+    public static int paraDia(String data) {
+        if (data == null) {
+            return SEM_DATA;
+        }
+        int tamanho = data.length();
+        int dia = 0;
+        int mes = 0;
+        int ano = 0;
+        int parte = 0;
+        int digitos = 0;
+        for (int i = 0; i < tamanho; i++) {
+            char c = data.charAt(i);
+            if (c == '/') {
+                if (digitos == 0 || digitos > 2 || parte == 2) {
+                    return SEM_DATA;
+                }
+                parte++;
+                digitos = 0;
+            } else if (c >= '0' && c <= '9' && digitos < 4) {
+                if (parte == 0) {
+                    dia = dia * 10 + (c - '0');
+                } else if (parte == 1) {
+                    mes = mes * 10 + (c - '0');
+                } else {
+                    ano = ano * 10 + (c - '0');
+                }
+                digitos++;
+            } else {
+                return SEM_DATA;
+            }
+        }
+        if (parte != 2 || digitos != 4) {
+            return SEM_DATA;
+        }
+        return paraDia(dia, mes, ano);
+    }
+
+    public static int paraDia(int dia, int mes, int ano) {
+        if (mes < 1 || mes > 12 || dia < 1) {
+            return SEM_DATA;
+        }
+        boolean bissexto = (ano % 4 == 0 && ano % 100 != 0) || ano % 400 == 0;
+        int diasNoMes = (mes == 2 && bissexto) ? 29 : DIAS_NO_MES[mes - 1];
+        if (dia > diasNoMes) {
+            return SEM_DATA;
+        }
+
+        // Contagem de dias do calendário civil (algoritmo de H. Hinnant)
+        int y = mes <= 2 ? ano - 1 : ano;
+        int era = Math.floorDiv(y, 400);
+        int anoDaEra = y - era * 400;
+        int diaDoAno = (153 * (mes + (mes > 2 ? -3 : 9)) + 2) / 5 + dia - 1;
+        int diaDaEra = anoDaEra * 365 + anoDaEra / 4 - anoDaEra / 100 + diaDoAno;
+        return era * 146097 + diaDaEra - 719468;
+    }
+
+    public static String formatar(int dia) {
+        if (dia == SEM_DATA) {
+            return "";
+        }
+        return FORMATADAS.computeIfAbsent(dia, d -> LocalDate.ofEpochDay(d).format(FORMATO));
+    }
+
+    public static int hoje() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+}
@@ -0,0 +1,393 @@
+package poofinal;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvException;
+import com.opencsv.exceptions.CsvMalformedLineException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Arquivo CSV em modo somente-anexação: cada linha nova vai para o fim do arquivo e
+// a reescrita completa só acontece em uma compactação explícita.
+class DiarioCSV {
+    enum PoliticaSync {
+        POR_REGISTRO,
+        AGRUPADO,
+        PERIODICO
+    }
+
+    private final String caminho;
+    private final String[] cabecalho;
+    private PoliticaSync politica;
+    private int tamanhoGrupo;
+    private long intervaloMs;
+
+    private FileOutputStream saida;
+    private CSVWriter writer;
+    private int pendentes;
+    private ScheduledExecutorService agendador;
+    private boolean ganchoRegistrado;
+    // Sequência da última linha escrita e da última já garantida em disco
+    private long escritas;
+    private volatile long duraveis;
+    // ReentrantLock e não synchronized: o servidor grava a partir de threads virtuais, e esperar pelo disco
+    // dentro de um synchronized prende a thread do sistema que carrega a thread virtual
+    private final ReentrantLock trava = new ReentrantLock();
+    // Só quem força o disco em aguardar; adquirida sempre antes de trava
+    private final ReentrantLock travaForca = new ReentrantLock();
+
+    public DiarioCSV(String caminho, String[] cabecalho) {
+        this.caminho = caminho;
+        this.cabecalho = cabecalho;
+        this.politica = PoliticaSync.POR_REGISTRO;
+        this.tamanhoGrupo = 50;
+        this.intervaloMs = 1000;
+    }
+
+    public void setPolitica(PoliticaSync politica, int tamanhoGrupo, long intervaloMs) {
+        trava.lock();
+        try {
+            sincronizar();
+            pararAgendador();
+            this.politica = politica;
+            this.tamanhoGrupo = Math.max(1, tamanhoGrupo);
+            this.intervaloMs = Math.max(1, intervaloMs);
+            if (writer != null) {
+                iniciarAgendador();
+            }
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public String getCaminho() {
+        return caminho;
+    }
+
+    // Para quem numera as linhas antes de escrevê-las (Estoque.registrar): com a trava adquirida nenhuma
+    // outra escrita entra entre a numeração e a gravação. aguardar só depois de destravar, porque
+    // travaForca vem antes dela.
+    void travar() {
+        trava.lock();
+    }
+
+    void destravar() {
+        trava.unlock();
+    }
+
+    // readNext para a releitura do diário: uma última linha que não fecha (queda no meio de uma gravação,
+    // quando reparar ainda não cortou o arquivo) encerra a leitura em vez de descartar tudo o que já foi lido
+    static String[] lerLinha(CSVReader reader) throws IOException, CsvException {
+        try {
+            return reader.readNext();
+        } catch (CsvMalformedLineException e) {
+            System.out.println("Linha incompleta no fim do arquivo (linha " + e.getLineNumber() + ") ignorada.");
+            return null;
+        }
+    }
+
+    public PoliticaSync getPolitica() {
+        trava.lock();
+        try {
+            return politica;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public void anexar(String[] linha) throws IOException {
+        aguardar(escrever(linha));
+    }
+
+    // Escreve a linha sem esperar pelo disco e devolve a sua sequência. Com POR_REGISTRO a linha só
+    // está garantida depois de aguardar(sequencia), que pode ser chamado fora das travas de quem escreve.
+    public long escrever(String[] linha) throws IOException {
+        return escrever(Collections.singletonList(linha));
+    }
+
+    // Linhas de um lote de movimentos: todas entram no arquivo antes que a política decida forçar o disco.
+    // As linhas vão para o sistema operacional a cada chamada (checkError esvazia o buffer), para que uma
+    // falha apareça aqui: o arquivo volta ao tamanho anterior e quem chamou não deve contar as linhas.
+    public long escrever(List<String[]> linhas) throws IOException {
+        trava.lock();
+        try {
+            abrir();
+            long tamanhoAntes = saida.getChannel().size();
+            try {
+                for (String[] linha : linhas) {
+                    writer.writeNext(linha);
+                }
+                if (writer.checkError()) {
+                    throw writer.getException() != null ? writer.getException() : new IOException("Falha ao gravar " + caminho);
+                }
+            } catch (IOException e) {
+                descartar(tamanhoAntes);
+                throw e;
+            }
+            pendentes += linhas.size();
+            escritas += linhas.size();
+            if (politica == PoliticaSync.AGRUPADO && pendentes >= tamanhoGrupo) {
+                try {
+                    forcar();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            return escritas;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    // Depois de uma falha de escrita: corta o que chegou ao arquivo e abandona o writer, cujo buffer pode
+    // ter restos das linhas recusadas. A próxima escrita abre o arquivo de novo.
+    private void descartar(long tamanho) {
+        try {
+            saida.getChannel().truncate(tamanho);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            saida.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writer = null;
+        saida = null;
+    }
+
+    // Commit em grupo: enquanto uma thread força o disco as outras esperam, e a seguinte que ainda
+    // precisar força de uma vez todas as linhas escritas até ali
+    public void aguardar(long sequencia) {
+        if (getPolitica() != PoliticaSync.POR_REGISTRO) {
+            return;
+        }
+        travaForca.lock();
+        try {
+            if (duraveis >= sequencia) {
+                return;
+            }
+            FileChannel canal;
+            long alvo;
+            trava.lock();
+            try {
+                if (writer == null) {
+                    // Fechado depois da escrita: fechar() já forçou o que havia
+                    return;
+                }
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                canal = saida.getChannel();
+                alvo = escritas;
+                pendentes = 0;
+            } finally {
+                trava.unlock();
+            }
+            try {
+                canal.force(false);
+                duraveis = Math.max(duraveis, alvo);
+            } catch (IOException e) {
+                // Um fechamento concorrente também força o disco antes de fechar o canal
+                if (duraveis < sequencia) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            travaForca.unlock();
+        }
+    }
+
+    public void sincronizar() {
+        trava.lock();
+        try {
+            if (writer == null || pendentes == 0) {
+                return;
+            }
+            try {
+                forcar();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    // Compactação: grava o conteúdo completo em um arquivo temporário e o troca pelo diário atual
+    public void reescrever(List<String[]> linhas) {
+        trava.lock();
+        try {
+            fechar();
+            Path destino = Paths.get(caminho);
+            Path temporario = Paths.get(caminho + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temporario.toFile());
+                 CSVWriter tmpWriter = new CSVWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                tmpWriter.writeNext(cabecalho);
+                for (String[] linha : linhas) {
+                    tmpWriter.writeNext(linha);
+                }
+                tmpWriter.flush();
+                out.getChannel().force(true);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            try {
+                Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                try {
+                    Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public void fechar() {
+        trava.lock();
+        try {
+            pararAgendador();
+            if (writer == null) {
+                return;
+            }
+            try {
+                forcar();
+                writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            writer = null;
+            saida = null;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    // Uma queda no meio de uma escrita pode deixar o diário terminando no meio de uma linha. Ela é cortada
+    // antes de ler o diário e antes de anexar, para que a próxima linha não fique colada nela.
+    public void reparar() {
+        trava.lock();
+        try {
+            if (writer != null) {
+                return;
+            }
+            try {
+                cortarLinhaIncompleta();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    private void cortarLinhaIncompleta() throws IOException {
+        Path arquivo = Paths.get(caminho);
+        if (!Files.exists(arquivo) || Files.size(arquivo) == 0) {
+            return;
+        }
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long tamanho = canal.size();
+            long corte = 0;
+            ByteBuffer bloco = ByteBuffer.allocate(4096);
+            long fim = tamanho;
+            procura:
+            while (fim > 0) {
+                long inicio = Math.max(0, fim - bloco.capacity());
+                bloco.clear().limit((int) (fim - inicio));
+                while (bloco.hasRemaining()) {
+                    if (canal.read(bloco, inicio + bloco.position()) < 0) {
+                        break;
+                    }
+                }
+                for (int i = bloco.position() - 1; i >= 0; i--) {
+                    if (bloco.get(i) == '\n') {
+                        corte = inicio + i + 1;
+                        break procura;
+                    }
+                }
+                fim = inicio;
+            }
+            if (corte < tamanho) {
+                System.out.println("Linha incompleta no fim de " + caminho + " descartada (" + (tamanho - corte) + " bytes).");
+                canal.truncate(corte);
+                canal.force(true);
+            }
+        }
+    }
+
+    private void abrir() throws IOException {
+        if (writer != null) {
+            return;
+        }
+        cortarLinhaIncompleta();
+        File arquivo = new File(caminho);
+        boolean vazio = !arquivo.exists() || arquivo.length() == 0;
+        saida = new FileOutputStream(arquivo, true);
+        writer = new CSVWriter(new OutputStreamWriter(saida, StandardCharsets.UTF_8));
+        if (vazio) {
+            writer.writeNext(cabecalho);
+            if (writer.checkError()) {
+                IOException erro = writer.getException();
+                descartar(0);
+                throw erro != null ? erro : new IOException("Falha ao gravar " + caminho);
+            }
+            pendentes++;
+        }
+        iniciarAgendador();
+        if (!ganchoRegistrado) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::fechar));
+            ganchoRegistrado = true;
+        }
+    }
+
+    private void forcar() throws IOException {
+        writer.flush();
+        saida.getChannel().force(false);
+        pendentes = 0;
+        duraveis = escritas;
+    }
+
+    private void iniciarAgendador() {
+        if (politica != PoliticaSync.PERIODICO || agendador != null) {
+            return;
+        }
+        agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "diario-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        agendador.scheduleAtFixedRate(this::sincronizar, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void pararAgendador() {
+        if (agendador != null) {
+            agendador.shutdown();
+            agendador = null;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package poofinal;
+
+// Situação de um local mantida a cada registro: a linha da última entrada (medicamento e validade
+// do lote que ocupa o local), o saldo total e a data do movimento mais recente.
+class EstadoLocal {
+    private int ultimaEntrada;
+    private int saldo;
+    private int ultimaData;
+
+    public EstadoLocal() {
+        this.ultimaEntrada = -1;
+        this.saldo = 0;
+        this.ultimaData = Datas.SEM_DATA;
+    }
+
+    public int getUltimaEntrada() {
+        return ultimaEntrada;
+    }
+
+    void setUltimaEntrada(int ultimaEntrada) {
+        this.ultimaEntrada = ultimaEntrada;
+    }
+
+    public int getSaldo() {
+        return saldo;
+    }
+
+    void somar(int quantidade) {
+        saldo += quantidade;
+    }
+
+    public int getUltimaData() {
+        return ultimaData;
+    }
+
+    void registrarData(int dia) {
+        ultimaData = Math.max(ultimaData, dia);
+    }
+}
@@ -1,39 +1,68 @@
+package poofinal;
+
 import com.opencsv.CSVWriter;
 import com.opencsv.CSVReader;
 import com.opencsv.exceptions.CsvException;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.FileReader;
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import javax.swing.JOptionPane;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 class Registro {
     private String estData;
-    private String estNat;
+    private Natureza natureza;
     private String estLocal;
+    // Índice do local na TabelaLocais; -1 enquanto o local não foi registrado (ver registrarLocal)
+    private int localId;
     private String estValid;
     private int estQnt;
     private int medId;
     private int estId;
+    // Datas convertidas uma única vez (dias desde 01/01/1970); as Strings ficam para exibição e CSV
+    private int diaData;
+    private int diaValid;
 
     public Registro(String estData, int medId, String estNat, String estLocal, String estValid, int estQnt) {
         this.estData = estData;
-        this.estNat = estNat;
-        this.estLocal = estLocal;
+        this.natureza = Natureza.deDescricao(estNat);
+        setEstLocal(estLocal);
         this.estValid = estValid;
         this.estQnt = estQnt;
         this.medId = medId;
+        this.diaData = Datas.paraDia(estData);
+        this.diaValid = Datas.paraDia(estValid);
+    }
+
+    // Registro montado a partir de uma linha do histórico colunar
+    Registro(int estId, int diaData, int medId, Natureza natureza, int localId, int diaValid, int estQnt) {
+        this.estId = estId;
+        this.estData = Datas.formatar(diaData);
+        this.diaData = diaData;
+        this.medId = medId;
+        this.natureza = natureza;
+        this.localId = localId;
+        this.estLocal = TabelaLocais.paraNome(localId);
+        this.estValid = Datas.formatar(diaValid);
+        this.diaValid = diaValid;
+        this.estQnt = estQnt;
     }
 
     public String getEstData() {
@@ -42,22 +71,46 @@ class Registro {
 
     public void setEstData(String estData) {
         this.estData = estData;
+        this.diaData = Datas.paraDia(estData);
+    }
+
+    public int getDiaData() {
+        return diaData;
     }
 
     public String getEstNat() {
-        return estNat;
+        return natureza == null ? null : natureza.getDescricao();
     }
 
     public void setEstNat(String estNat) {
-        this.estNat = estNat;
+        this.natureza = Natureza.deDescricao(estNat);
+    }
+
+    public Natureza getNatureza() {
+        return natureza;
     }
 
     public String getEstLocal() {
         return estLocal;
     }
 
+    // Um local já conhecido passa a usar a instância da tabela; um local novo só entra na tabela quando
+    // o registro é guardado, para que movimentos recusados não a façam crescer
     public void setEstLocal(String estLocal) {
-        this.estLocal = estLocal;
+        this.localId = TabelaLocais.buscar(estLocal);
+        this.estLocal = localId < 0 ? estLocal : TabelaLocais.paraNome(localId);
+    }
+
+    void registrarLocal() {
+        if (localId < 0) {
+            localId = TabelaLocais.paraId(estLocal);
+            estLocal = TabelaLocais.paraNome(localId);
+        }
+    }
+
+    public int getLocalId() {
+        registrarLocal();
+        return localId;
     }
 
     public String getEstValid() {
@@ -66,6 +119,11 @@ class Registro {
 
     public void setEstValid(String estValid) {
         this.estValid = estValid;
+        this.diaValid = Datas.paraDia(estValid);
+    }
+
+    public int getDiaValid() {
+        return diaValid;
     }
 
     public int getEstQnt() {
@@ -94,290 +152,1360 @@ class Registro {
 }
 
 class Estoque {
-    private List<Registro> estoque;
-    private int lastEstId;
+    private static final String HIST_CSV = "src/hist_estoque.csv";
+    private static final String[] CABECALHO = {"ID", "Data", "ID Medicamento", "Natureza", "Local", "Validade", "Quantidade"};
+    // Linha do diário que desfaz o registro com o mesmo ID
+    private static final String REMOCAO = "Remoção";
+    // Linhas lidas do CSV na carga a partir das quais vale gravar um snapshot novo
+    static final int LINHAS_PARA_SNAPSHOT = 10000;
+    // Potência de dois: o local escolhe a sua trava pelos bits baixos do hash do nome (ver indiceDaTrava)
+    private static final int TRAVAS_POR_LOCAL = 64;
+
+    private final Historico historico;
+    // Linhas do histórico ordenadas por data, para consultas por período
+    private final IndicePorData porData;
+    private final AtomicInteger lastEstId;
     private CadastroMedicamentos cadastro;
 
+    // Concorrência: cada local tem uma trava (compartilhada com os locais do mesmo resto), que torna as
+    // regras do local (datas em ordem, um lote por local, saldo não negativo) serializáveis entre a
+    // validação e a inclusão. O histórico e os índices que todos os locais compartilham ficam sob
+    // travaHistorico: a linha nova entra com a trava exclusiva, e os saldos do local são atualizados
+    // depois com a compartilhada, em paralelo com outros locais. A gravação no diário fica fora de
+    // travaHistorico, só com a trava do próprio diário (ver registrar). Ordem de aquisição: locais em
+    // ordem crescente de trava, a do diário e depois travaHistorico; quem usa o diário com a exclusiva
+    // adquirida (compactar, salvarSnapshot, carregar) adquire antes as travas de todos os locais.
+    private final ReentrantLock[] travasPorLocal;
+    private final ReentrantReadWriteLock travaHistorico;
+
+    // Saldos mantidos a cada registro, para que as consultas não precisem percorrer o histórico
+    private final Map<Integer, Integer> saldoPorMedicamento;
+    private final Map<String, Map<Integer, Integer>> saldoPorLocal;
+    private final Map<String, Map<Integer, Map<String, Integer>>> saldoDetalhado;
+    private final Map<String, Map<Integer, String>> validadePorLocal;
+    private final Map<Integer, NavigableSet<Lote>> lotesPorMedicamento;
+    private final Map<String, Map<Integer, Map<String, SaldoLote>>> lotes;
+    private final Map<String, EstadoLocal> estadoPorLocal;
+    // Sob travaHistorico
+    private final SaldoPorData saldoPorData;
+    // Lotes com saldo por dia de validade, mudados com a trava do local quando o saldo do lote passa por
+    // zero (ver indexarValidade). Um dia cujos lotes acabaram fica com o conjunto vazio.
+    private final ConcurrentSkipListMap<Integer, NavigableSet<Lote>> lotesPorValidade;
+
+    private DiarioCSV diario;
+    private String caminhoSnapshot;
+
     public Estoque(CadastroMedicamentos cadastro) {
-        this.estoque = new ArrayList<>();
-        this.lastEstId = 0;
+        this(cadastro, HIST_CSV);
+    }
+
+    public Estoque(CadastroMedicamentos cadastro, String caminhoHistorico) {
+        this(cadastro, caminhoHistorico, false);
+    }
+
+    // No modo colunar os movimentos ficam em colunas de int, sem um objeto Registro por linha;
+    // os Registros devolvidos pelas consultas são montados na hora
+    public Estoque(CadastroMedicamentos cadastro, String caminhoHistorico, boolean colunar) {
+        this.historico = colunar ? new HistoricoColunar() : new HistoricoObjetos();
+        this.porData = new IndicePorData(historico);
+        this.lastEstId = new AtomicInteger();
         this.cadastro = cadastro;
+        this.diario = new DiarioCSV(caminhoHistorico, CABECALHO);
+        this.caminhoSnapshot = caminhoHistorico.replaceFirst("\\.csv$", "") + ".snap";
+        this.travasPorLocal = new ReentrantLock[TRAVAS_POR_LOCAL];
+        for (int i = 0; i < TRAVAS_POR_LOCAL; i++) {
+            travasPorLocal[i] = new ReentrantLock();
+        }
+        this.travaHistorico = new ReentrantReadWriteLock();
+        this.saldoPorMedicamento = new ConcurrentHashMap<>();
+        this.saldoPorLocal = new ConcurrentHashMap<>();
+        this.saldoDetalhado = new ConcurrentHashMap<>();
+        this.validadePorLocal = new ConcurrentHashMap<>();
+        this.lotesPorMedicamento = new ConcurrentHashMap<>();
+        this.lotes = new ConcurrentHashMap<>();
+        this.estadoPorLocal = new ConcurrentHashMap<>();
+        this.saldoPorData = new SaldoPorData(historico, porData);
+        this.lotesPorValidade = new ConcurrentSkipListMap<>();
     }
 
-    public List<Registro> getEstoque() {
-        return estoque;
+    // Pelo nome, e não pelo ID da TabelaLocais, para que consultas e movimentos recusados de locais
+    // desconhecidos não precisem registrá-los
+    private static int indiceDaTrava(String local) {
+        int h = local.hashCode();
+        return (h ^ (h >>> 16)) & (TRAVAS_POR_LOCAL - 1);
     }
 
-    public void novoRegistro(Registro registro, boolean verbose) {
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
-        Date dataRegistro;
+    private ReentrantLock travaDoLocal(String local) {
+        return travasPorLocal[indiceDaTrava(local)];
+    }
+
+    // Para cargas: nenhum registro, remoção ou consulta ao histórico acontece enquanto o estado é trocado
+    private void travarTudo() {
+        for (ReentrantLock trava : travasPorLocal) {
+            trava.lock();
+        }
+        travaHistorico.writeLock().lock();
+    }
+
+    private void destravarTudo() {
+        travaHistorico.writeLock().unlock();
+        for (int i = TRAVAS_POR_LOCAL - 1; i >= 0; i--) {
+            travasPorLocal[i].unlock();
+        }
+    }
+
+    public void setPoliticaSync(DiarioCSV.PoliticaSync politica, int tamanhoGrupo, long intervaloMs) {
+        diario.setPolitica(politica, tamanhoGrupo, intervaloMs);
+    }
+
+    // Reescreve o histórico completo, descartando o que foi apenas anexado
+    public void compactar() {
+        // Todas as travas: os registros em andamento terminam de atualizar os saldos, e nenhum está entre
+        // a gravação no diário e a inclusão em memória
+        travarTudo();
         try {
-            dataRegistro = sdf.parse(registro.getEstData());
-        } catch (ParseException e) {
-            if (verbose) {
-                JOptionPane.showMessageDialog(null, "Data do registro inválida.", "Erro", JOptionPane.ERROR_MESSAGE);
+            List<String[]> linhas = new ArrayList<>(porData.tamanho());
+            for (int linha = 0; linha < historico.getQuantidadeLinhas(); linha++) {
+                if (!historico.isRemovida(linha)) {
+                    linhas.add(paraLinha(linha));
+                }
+            }
+            diario.reescrever(linhas);
+            // O snapshot anterior não corresponde mais ao diário reescrito
+            salvarSnapshot(caminhoSnapshot);
+        } finally {
+            destravarTudo();
+        }
+    }
+
+    // Os mapas não são trocados, só esvaziados: consultas sem trava continuam com as mesmas referências
+    private void limparSaldos() {
+        saldoPorMedicamento.clear();
+        saldoPorLocal.clear();
+        saldoDetalhado.clear();
+        validadePorLocal.clear();
+        lotesPorMedicamento.clear();
+        lotes.clear();
+        estadoPorLocal.clear();
+        saldoPorData.limpar();
+        lotesPorValidade.clear();
+    }
+
+    // reg é o movimento da linha, já montado por quem chama. Com a trava do local e ao menos a
+    // compartilhada do histórico.
+    private void atualizarSaldos(Registro reg, int linha, int sinal) {
+        String local = reg.getEstLocal();
+        int medId = reg.getMedId();
+        int quantidade = sinal * reg.getEstQnt() * reg.getNatureza().getSinal();
+
+        saldoPorMedicamento.merge(medId, quantidade, Integer::sum);
+        saldoPorLocal.computeIfAbsent(local, k -> new ConcurrentHashMap<>()).merge(medId, quantidade, Integer::sum);
+        saldoDetalhado.computeIfAbsent(local, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(medId, k -> new ConcurrentHashMap<>())
+                .merge(reg.getEstValid(), quantidade, Integer::sum);
+        EstadoLocal estadoLocal = estadoPorLocal.computeIfAbsent(local, k -> new EstadoLocal());
+        estadoLocal.somar(quantidade);
+        // Em uma remoção a data mais recente é mantida: registros novos no local continuam não podendo ser anteriores a ela
+        estadoLocal.registrarData(reg.getDiaData());
+        atualizarSaldoLote(reg, linha, sinal);
+        atualizarLote(local, medId);
+
+        if (sinal > 0 && reg.getNatureza() == Natureza.ENTRADA) {
+            estadoLocal.setUltimaEntrada(linha);
+            atualizarValidade(reg);
+        }
+    }
+
+    // Com a trava do local: o lote entra no índice de validades quando passa a ter saldo e sai quando o
+    // saldo acaba, para que verificarValidade percorra só lotes com saldo
+    private void indexarValidade(int medId, String local, String validade, boolean tinhaSaldo, boolean temSaldo) {
+        if (tinhaSaldo == temSaldo) {
+            return;
+        }
+        Lote lote = new Lote(medId, local, validade);
+        if (lote.getDiaValid() == Datas.SEM_DATA) {
+            return;
+        }
+        if (temSaldo) {
+            lotesPorValidade.computeIfAbsent(lote.getDiaValid(), k -> new ConcurrentSkipListSet<>()).add(lote);
+        } else {
+            NavigableSet<Lote> doDia = lotesPorValidade.get(lote.getDiaValid());
+            if (doDia != null) {
+                doDia.remove(lote);
             }
+        }
+    }
+
+    private void atualizarValidade(Registro reg) {
+        Map<Integer, String> validades = validadePorLocal.computeIfAbsent(reg.getEstLocal(), k -> new ConcurrentHashMap<>());
+        String existente = validades.get(reg.getMedId());
+        if (existente == null) {
+            definirValidade(reg.getEstLocal(), reg.getMedId(), reg.getEstValid());
             return;
         }
 
-        for (Registro reg : estoque) {
-            if (reg.getEstLocal().equals(registro.getEstLocal())) {
-                Date dataExistente;
-                try {
-                    dataExistente = sdf.parse(reg.getEstData());
-                } catch (ParseException e) {
-                    continue;
-                }
-                if (dataExistente.after(dataRegistro)) {
-                    if (verbose) {
-                        JOptionPane.showMessageDialog(null, "Não é permitido cadastrar registros com data anterior a registros já existentes no mesmo local.", "Erro", JOptionPane.ERROR_MESSAGE);
+        int diaExistente = Datas.paraDia(existente);
+        if (reg.getDiaData() != Datas.SEM_DATA && diaExistente != Datas.SEM_DATA && reg.getDiaData() > diaExistente) {
+            definirValidade(reg.getEstLocal(), reg.getMedId(), reg.getEstValid());
+        }
+    }
+
+    // Mantém a validade vigente de cada local e o lote correspondente na lista FEFO do medicamento
+    private void definirValidade(String local, int medId, String validade) {
+        Map<Integer, String> validades = validadePorLocal.computeIfAbsent(local, k -> new ConcurrentHashMap<>());
+        String anterior = validade == null ? validades.remove(medId) : validades.put(medId, validade);
+
+        NavigableSet<Lote> lotes = lotesPorMedicamento.computeIfAbsent(medId, k -> new ConcurrentSkipListSet<>());
+        if (anterior != null) {
+            lotes.remove(new Lote(medId, local, anterior));
+        }
+        if (validade != null && getSaldo(local, medId) > 0) {
+            lotes.add(new Lote(medId, local, validade));
+        }
+    }
+
+    // Entradas formam o lote da sua validade; saídas consomem o lote da última entrada do local, que é o único com saldo
+    private void atualizarSaldoLote(Registro reg, int linha, int sinal) {
+        String local = reg.getEstLocal();
+        int medId = reg.getMedId();
+        if (reg.getNatureza() == Natureza.ENTRADA) {
+            Map<String, SaldoLote> porValidade = lotes.computeIfAbsent(local, k -> new ConcurrentHashMap<>()).computeIfAbsent(medId, k -> new ConcurrentHashMap<>());
+            if (sinal > 0) {
+                SaldoLote lote = porValidade.computeIfAbsent(reg.getEstValid(), k -> new SaldoLote());
+                boolean tinhaSaldo = lote.getSaldo() > 0;
+                lote.adicionarEntrada(linha, reg.getEstQnt());
+                indexarValidade(medId, local, reg.getEstValid(), tinhaSaldo, lote.getSaldo() > 0);
+            } else {
+                SaldoLote lote = porValidade.get(reg.getEstValid());
+                if (lote != null) {
+                    boolean tinhaSaldo = lote.getSaldo() > 0;
+                    lote.removerEntrada(linha, reg.getEstQnt());
+                    if (lote.isVazio()) {
+                        porValidade.remove(reg.getEstValid());
                     }
-                    return;
+                    indexarValidade(medId, local, reg.getEstValid(), tinhaSaldo, !lote.isVazio() && lote.getSaldo() > 0);
                 }
             }
+        } else {
+            // A saída sai do lote da própria validade, a mesma chave do saldoDetalhado. Saídas sem validade
+            // (históricos antigos, ou a API sem o campo) continuam saindo do lote da última entrada do local.
+            String validade;
+            if (reg.getDiaValid() != Datas.SEM_DATA) {
+                validade = reg.getEstValid();
+            } else {
+                int ultimaEntrada = getUltimaEntrada(local);
+                validade = ultimaEntrada < 0 || historico.getMedId(ultimaEntrada) != medId ? null : historico.getEstValid(ultimaEntrada);
+            }
+            SaldoLote lote = getLote(local, medId, validade);
+            if (lote != null) {
+                boolean tinhaSaldo = lote.getSaldo() > 0;
+                lote.somar(-sinal * reg.getEstQnt());
+                indexarValidade(medId, local, validade, tinhaSaldo, lote.getSaldo() > 0);
+            }
         }
+    }
 
-        if (registro.getEstNat().equals("Saída")) {
-            Map<Integer, Map<String, Integer>> qntDisp = estoqueAtualPorLocal(registro.getEstData(), List.of(registro.getMedId()));
-            int quantidadeDisponivel = qntDisp.getOrDefault(registro.getMedId(), new HashMap<>()).getOrDefault(registro.getEstLocal(), 0);
-            if (registro.getEstQnt() > quantidadeDisponivel) {
-                if (verbose) {
-                    JOptionPane.showMessageDialog(null, "Quantidade não disponível no local especificado. Registro não realizado.", "Erro", JOptionPane.ERROR_MESSAGE);
+    private SaldoLote getLote(String local, int medId, String validade) {
+        Map<Integer, Map<String, SaldoLote>> porMedicamento = lotes.get(local);
+        if (porMedicamento == null || validade == null) {
+            return null;
+        }
+        Map<String, SaldoLote> porValidade = porMedicamento.get(medId);
+        return porValidade == null ? null : porValidade.get(validade);
+    }
+
+    // A lista FEFO só guarda locais com saldo, para que a alocação não percorra posições vazias
+    private void atualizarLote(String local, int medId) {
+        String validade = validadePorLocal.getOrDefault(local, Map.of()).get(medId);
+        if (validade == null) {
+            return;
+        }
+        NavigableSet<Lote> lotes = lotesPorMedicamento.computeIfAbsent(medId, k -> new ConcurrentSkipListSet<>());
+        if (getSaldo(local, medId) > 0) {
+            lotes.add(new Lote(medId, local, validade));
+        } else {
+            lotes.remove(new Lote(medId, local, validade));
+        }
+    }
+
+    // Cópia dos registros na ordem de inclusão
+    public List<Registro> getEstoque() {
+        travaHistorico.readLock().lock();
+        try {
+            List<Registro> registros = new ArrayList<>(porData.tamanho());
+            for (int linha = 0; linha < historico.getQuantidadeLinhas(); linha++) {
+                if (!historico.isRemovida(linha)) {
+                    registros.add(historico.getRegistro(linha));
                 }
-                return;
             }
+            return registros;
+        } finally {
+            travaHistorico.readLock().unlock();
         }
+    }
 
-        this.lastEstId++;
-        registro.setEstId(this.lastEstId);
-        this.estoque.add(registro);
-        saveCSV("src/hist_estoque.csv");
-        if (verbose) {
+    // Pode ser chamado de várias threads ao mesmo tempo (ver travasPorLocal)
+    public void novoRegistro(Registro registro, boolean verbose) {
+        String erro = registrar(List.of(registro));
+        if (!verbose) {
+            return;
+        }
+        if (erro != null) {
+            JOptionPane.showMessageDialog(null, erro, "Erro", JOptionPane.ERROR_MESSAGE);
+        } else {
             JOptionPane.showMessageDialog(null, "Registro realizado com sucesso! (ID " + registro.getEstId() + ")");
         }
     }
 
-    public boolean isLocalPermitido(String local, int medId, String validade, String nat) {
-        if (nat.equals("Entrada")) {
-            Registro last_reg = estoque.getFirst();
-            for (Registro reg : estoque) {
-                if (reg.getEstLocal().equals(local) && reg.getEstNat().equals("Entrada")) {
-                    last_reg = reg;
-                }
+    // Movimentos de uma entrega ou de uma lista de retirada, registrados todos ou nenhum. São validados
+    // juntos em ordem de data, e cada um vê os anteriores do lote (uma saída pode consumir uma entrada do
+    // mesmo lote); o diário é gravado uma vez só para o lote inteiro. Devolve se o lote foi registrado.
+    public boolean novosRegistros(List<Registro> registros, boolean verbose) {
+        String erro = registrar(registros);
+        if (verbose) {
+            if (erro != null) {
+                JOptionPane.showMessageDialog(null, erro + " Nenhum registro do lote foi realizado.", "Erro", JOptionPane.ERROR_MESSAGE);
+            } else if (!registros.isEmpty()) {
+                JOptionPane.showMessageDialog(null, registros.size() + " registros realizados com sucesso!");
             }
-            if (last_reg.getMedId() == medId && last_reg.getEstValid().equals(validade)) {
-                return true;
+        }
+        return erro == null;
+    }
+
+    // Devolve a mensagem de erro, ou null quando os registros foram feitos. Quem chama mostra a mensagem:
+    // nenhuma janela é aberta com as travas adquiridas. Usado também pelo ServidorEstoque.
+    String registrar(List<Registro> registros) {
+        for (Registro registro : registros) {
+            if (registro.getDiaData() == Datas.SEM_DATA) {
+                return erroNoLote(registros, registro, "Data do registro inválida.");
+            }
+            if (registro.getNatureza() == null) {
+                return erroNoLote(registros, registro, "Natureza do registro inválida.");
+            }
+        }
+        if (registros.isEmpty()) {
+            return null;
+        }
+        // Movimentos do mesmo dia ficam na ordem em que vieram
+        List<Registro> ordenados = new ArrayList<>(registros);
+        ordenados.sort(Comparator.comparingInt(Registro::getDiaData));
+
+        // Travas dos locais do lote, em ordem crescente
+        boolean[] travas = new boolean[TRAVAS_POR_LOCAL];
+        for (Registro registro : ordenados) {
+            travas[indiceDaTrava(registro.getEstLocal())] = true;
+        }
+        for (int i = 0; i < TRAVAS_POR_LOCAL; i++) {
+            if (travas[i]) {
+                travasPorLocal[i].lock();
             }
         }
-        int quantidadeDisponivel = 0;
-        for (Registro reg : estoque) {
-            if (reg.getEstLocal().equals(local)) {
-                if (reg.getEstNat().equals("Entrada")) {
-                    quantidadeDisponivel += reg.getEstQnt();
-                } else if (reg.getEstNat().equals("Saída")) {
-                    quantidadeDisponivel -= reg.getEstQnt();
+
+        long sequencia;
+        try {
+            String erro;
+            travaHistorico.readLock().lock();
+            try {
+                erro = validar(ordenados, registros);
+            } finally {
+                travaHistorico.readLock().unlock();
+            }
+            if (erro != null) {
+                return erro;
+            }
+
+            // As travas dos locais continuam adquiridas: nenhum movimento desses locais entra entre a
+            // validação e a inclusão, e a partir daqui nenhum movimento do lote pode mais ser recusado
+            int[] linhas = new int[ordenados.size()];
+            Registro[] guardados = new Registro[ordenados.size()];
+            List<String[]> linhasDiario = new ArrayList<>(ordenados.size());
+            // Os IDs saem com a trava do diário, e não com a exclusiva do histórico: registros de outros
+            // locais continuam sendo consultados e validados enquanto este espera pelo disco
+            diario.travar();
+            try {
+                // O ID sai junto com a linha, para que os IDs continuem crescendo com as linhas (ver linhaPorId)
+                int ultimoId = lastEstId.get();
+                for (Registro registro : ordenados) {
+                    registro.setEstId(lastEstId.incrementAndGet());
+                    linhasDiario.add(paraLinha(registro));
+                }
+                // O diário é gravado antes do histórico em memória: se a gravação falhar nada mudou, e os IDs
+                // podem voltar atrás porque ninguém mais recebeu um ID com a trava do diário adquirida.
+                // Na mesma ordem dos IDs, para que a releitura do diário reproduza as linhas.
+                try {
+                    sequencia = diario.escrever(linhasDiario);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    lastEstId.set(ultimoId);
+                    for (Registro registro : ordenados) {
+                        registro.setEstId(0);
+                    }
+                    return "Não foi possível gravar no arquivo do histórico (" + e.getMessage() + "). Registro não realizado.";
+                }
+                // A exclusiva é adquirida antes de soltar a do diário, para que as linhas entrem em memória
+                // na ordem em que foram gravadas
+                travaHistorico.writeLock().lock();
+            } finally {
+                diario.destravar();
+            }
+            try {
+                for (int i = 0; i < ordenados.size(); i++) {
+                    // Só agora, com o movimento aceito e gravado no diário, um local novo entra na TabelaLocais
+                    ordenados.get(i).registrarLocal();
+                    linhas[i] = historico.adicionar(ordenados.get(i));
+                    porData.inserir(linhas[i]);
+                    saldoPorData.adicionar(linhas[i]);
+                    // Saldos a partir do movimento como ficou guardado: no histórico colunar a validade volta normalizada
+                    guardados[i] = historico.getRegistro(linhas[i]);
+                }
+                travaHistorico.readLock().lock();
+            } finally {
+                travaHistorico.writeLock().unlock();
+            }
+            try {
+                for (int i = 0; i < guardados.length; i++) {
+                    atualizarSaldos(guardados[i], linhas[i], 1);
+                }
+            } finally {
+                travaHistorico.readLock().unlock();
+            }
+        } finally {
+            for (int i = TRAVAS_POR_LOCAL - 1; i >= 0; i--) {
+                if (travas[i]) {
+                    travasPorLocal[i].unlock();
                 }
             }
         }
-        return quantidadeDisponivel == 0;
+        // Fora das travas, para que os registros feitos ao mesmo tempo dividam a gravação em disco
+        diario.aguardar(sequencia);
+        return null;
     }
 
-    public Map<Integer, Integer> getEstoqueAtualPorMedicamento() {
-        Map<Integer, Integer> estoquePorMedicamento = new HashMap<>();
+    // Com as travas dos locais e a compartilhada do histórico. Os movimentos anteriores do lote contam
+    // como já registrados: data mais recente, saldos e última entrada de cada local são acumulados aqui.
+    private String validar(List<Registro> ordenados, List<Registro> registros) {
+        Map<String, Integer> ultimaData = new HashMap<>();
+        Map<String, Integer> saldoNoLocal = new HashMap<>();
+        Map<String, Map<Integer, Integer>> saldoDoMedicamento = new HashMap<>();
+        Map<String, Registro> ultimaEntrada = new HashMap<>();
 
-        for (Registro reg : estoque) {
-            int medId = reg.getMedId();
-            int quantidade = reg.getEstQnt() * (reg.getEstNat().equals("Saída") ? -1 : 1);
+        for (Registro registro : ordenados) {
+            String local = registro.getEstLocal();
+            int medId = registro.getMedId();
+            EstadoLocal estadoLocal = estadoPorLocal.get(local);
 
-            estoquePorMedicamento.put(medId, estoquePorMedicamento.getOrDefault(medId, 0) + quantidade);
-        }
-
-        return estoquePorMedicamento;
-    }
+            int data = ultimaData.getOrDefault(local, estadoLocal == null ? Datas.SEM_DATA : estadoLocal.getUltimaData());
+            if (data > registro.getDiaData()) {
+                return erroNoLote(registros, registro, "Não é permitido cadastrar registros com data anterior a registros já existentes no mesmo local.");
+            }
+            int saldoLocal = saldoNoLocal.getOrDefault(local, estadoLocal == null ? 0 : estadoLocal.getSaldo());
+            Map<Integer, Integer> porMedicamento = saldoDoMedicamento.computeIfAbsent(local, k -> new HashMap<>());
+            int saldoMedicamento = porMedicamento.getOrDefault(medId, getSaldo(local, medId));
 
-    public Map<String, Map<Integer, Integer>> getEstoqueAtualPorLocal() {
-        Map<String, Map<Integer, Integer>> estoquePorLocal = new HashMap<>();
+            if (registro.getNatureza() == Natureza.ENTRADA) {
+                Registro anterior = ultimaEntrada.get(local);
+                boolean mesmoLote = anterior == null
+                        ? isUltimaEntrada(local, medId, registro.getEstValid())
+                        : anterior.getMedId() == medId && anterior.getEstValid().equals(registro.getEstValid());
+                if (!mesmoLote && saldoLocal != 0) {
+                    return erroNoLote(registros, registro, "Não é possível cadastrar entradas em locais que ainda possuem estoque com outro medicamento ou outra validade.");
+                }
+                ultimaEntrada.put(local, registro);
+            } else if (registro.getEstQnt() > saldoMedicamento) {
+                // Nenhum registro do local é posterior à data da saída, então o saldo atual é o saldo naquela data
+                return erroNoLote(registros, registro, "Quantidade não disponível no local especificado. Registro não realizado.");
+            }
 
-        for (Registro reg : estoque) {
-            String local = reg.getEstLocal();
-            int medId = reg.getMedId();
-            int quantidade = reg.getEstQnt() * (reg.getEstNat().equals("Saída") ? -1 : 1);
+            int quantidade = registro.getEstQnt() * registro.getNatureza().getSinal();
+            ultimaData.put(local, Math.max(data, registro.getDiaData()));
+            saldoNoLocal.put(local, saldoLocal + quantidade);
+            porMedicamento.put(medId, saldoMedicamento + quantidade);
+        }
+        return null;
+    }
 
-            estoquePorLocal.putIfAbsent(local, new HashMap<>());
-            estoquePorLocal.get(local).put(medId, estoquePorLocal.get(local).getOrDefault(medId, 0) + quantidade);
+    // Em um lote a mensagem diz qual movimento foi recusado
+    private static String erroNoLote(List<Registro> registros, Registro registro, String mensagem) {
+        if (registros.size() == 1) {
+            return mensagem;
         }
+        return "Movimento " + (registros.indexOf(registro) + 1) + " de " + registros.size() + " ("
+                + registro.getEstNat() + " em " + registro.getEstData() + ", local " + registro.getEstLocal()
+                + ", medicamento " + registro.getMedId() + "): " + mensagem;
+    }
 
-        return estoquePorLocal;
+    public boolean isLocalPermitido(String local, int medId, String validade, String nat) {
+        ReentrantLock travaLocal = travaDoLocal(local);
+        travaLocal.lock();
+        travaHistorico.readLock().lock();
+        try {
+            if (nat.equals("Entrada") && isUltimaEntrada(local, medId, validade)) {
+                return true;
+            }
+            EstadoLocal estadoLocal = estadoPorLocal.get(local);
+            return estadoLocal == null || estadoLocal.getSaldo() == 0;
+        } finally {
+            travaHistorico.readLock().unlock();
+            travaLocal.unlock();
+        }
     }
 
-    public Map<String, Map<Integer, String>> getValidadePorLocal() {
-        Map<String, Map<Integer, String>> validadePorLocal = new HashMap<>();
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
+    // Se o lote que ocupa o local é o do medicamento com essa validade
+    private boolean isUltimaEntrada(String local, int medId, String validade) {
+        int last_reg = getUltimaEntrada(local);
+        return last_reg >= 0 && historico.getMedId(last_reg) == medId && historico.getEstValid(last_reg).equals(validade);
+    }
 
-        for (Registro reg : estoque) {
-            if (reg.getEstNat().equals("Entrada")) {
-                String local = reg.getEstLocal();
-                int medId = reg.getMedId();
-                String validade = reg.getEstValid();
-                String data = reg.getEstData();
+    private int getUltimaEntrada(String local) {
+        EstadoLocal estadoLocal = estadoPorLocal.get(local);
+        return estadoLocal == null ? -1 : estadoLocal.getUltimaEntrada();
+    }
 
-                validadePorLocal.putIfAbsent(local, new HashMap<>());
-                validadePorLocal.get(local).putIfAbsent(medId, validade);
+    public Map<Integer, Integer> getEstoqueAtualPorMedicamento() {
+        return Collections.unmodifiableMap(saldoPorMedicamento);
+    }
 
-                try {
-                    Date dataRegistro = sdf.parse(data);
-                    Date dataExistente = sdf.parse(validadePorLocal.get(local).get(medId));
+    public Map<String, Map<Integer, Integer>> getEstoqueAtualPorLocal() {
+        return Collections.unmodifiableMap(saldoPorLocal);
+    }
 
-                    if (dataRegistro.after(dataExistente)) {
-                        validadePorLocal.get(local).put(medId, validade);
-                    }
-                } catch (ParseException e) {
-                    e.printStackTrace();
-                }
+    // Substitutos de um medicamento em falta: os equivalentes do cadastro (mesmos princípios ativos nas
+    // mesmas dosagens) com saldo, do maior saldo para o menor. O custo depende só de quantos equivalentes
+    // o medicamento tem, não do tamanho do cadastro ou do histórico.
+    public Map<Integer, Integer> getEquivalentesEmEstoque(int medId) {
+        ListaInt equivalentes = cadastro.getEquivalentes(medId);
+        List<Map.Entry<Integer, Integer>> comSaldo = new ArrayList<>(equivalentes.size());
+        for (int i = 0; i < equivalentes.size(); i++) {
+            int saldo = saldoPorMedicamento.getOrDefault(equivalentes.get(i), 0);
+            if (saldo > 0) {
+                comSaldo.add(Map.entry(equivalentes.get(i), saldo));
             }
         }
+        comSaldo.sort(Map.Entry.<Integer, Integer>comparingByValue().reversed());
+        Map<Integer, Integer> emEstoque = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> equivalente : comSaldo) {
+            emEstoque.put(equivalente.getKey(), equivalente.getValue());
+        }
+        return emEstoque;
+    }
 
-        return validadePorLocal;
+    public Map<String, Map<Integer, String>> getValidadePorLocal() {
+        return Collections.unmodifiableMap(validadePorLocal);
     }
 
+    // Locais com o medicamento, da validade mais próxima para a mais distante
+    public NavigableSet<Lote> getLotesPorValidade(int medId) {
+        return Collections.unmodifiableNavigableSet(lotesPorMedicamento.getOrDefault(medId, new TreeSet<>()));
+    }
 
+    public int getSaldo(String local, int medId) {
+        Map<Integer, Integer> porMedicamento = saldoPorLocal.get(local);
+        return porMedicamento == null ? 0 : porMedicamento.getOrDefault(medId, 0);
+    }
+
+
+    // Carga confiável: lê o arquivo linha a linha, uma única vez, valida cada linha contra os saldos acumulados
+    // até ali, mantém os IDs da coluna 0 e não grava nada de volta.
     public void uploadCSV(String filePath) {
-        try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
-            List<String[]> rows = reader.readAll();
+        travarTudo();
+        try {
+            lerArquivo(filePath);
+        } finally {
+            try {
+                // O arquivo só é ordenado por data dentro de cada local; o índice por data e os saldos
+                // por data são montados uma vez no fim, em vez de inserções no meio durante a leitura.
+                // Também depois de uma falha, para que fiquem de acordo com o que chegou a ser lido.
+                porData.reconstruir();
+                saldoPorData.reconstruir();
+            } finally {
+                destravarTudo();
+            }
+        }
+    }
 
-            if (!estoque.isEmpty()) {
-                System.out.println(estoque.size() + " registros foram apagados para upload desse arquivo.");
+    private void lerArquivo(String filePath) {
+        try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
+            if (porData.tamanho() > 0) {
+                System.out.println(porData.tamanho() + " registros foram apagados para upload desse arquivo.");
             }
 
-            estoque.clear();
-            lastEstId = 0;
+            historico.limpar();
+            porData.limpar();
+            lastEstId.set(0);
+            limparSaldos();
 
-            for (String[] row : rows) {
-                if (rows.indexOf(row) == 0) continue;
+            reader.skip(1);
+            lerRegistros(reader, true);
+        } catch (IOException | CsvException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Aplica as linhas do CSV e devolve quantas foram lidas. Com indicesNoFim o índice por data e os saldos
+    // por data ficam para quem chama reconstruí-los; sem, são atualizados a cada linha, como em novoRegistro.
+    private int lerRegistros(CSVReader reader, boolean indicesNoFim) throws IOException, CsvException {
+        int lidas = 0;
+        int ignorados = 0;
+
+        String[] row;
+        while ((row = DiarioCSV.lerLinha(reader)) != null) {
+            lidas++;
+            // Uma linha com campos faltando ou números inválidos é contada e pulada: tudo o que ela tem
+            // é lido antes de qualquer mudança no estoque
+            try {
                 int estId = Integer.parseInt(row[0]);
                 String estData = row[1];
                 int medId = Integer.parseInt(row[2]);
                 String estNat = row[3];
+
+                if (estNat.equals(REMOCAO)) {
+                    int linha = linhaPorId(estId);
+                    if (linha < 0) {
+                        ignorados++;
+                        continue;
+                    }
+                    Registro removido = historico.getRegistro(linha);
+                    if (!indicesNoFim) {
+                        porData.remover(linha);
+                    }
+                    historico.remover(linha);
+                    atualizarSaldos(removido, linha, -1);
+                    if (!indicesNoFim) {
+                        saldoPorData.remover(linha);
+                    }
+                    restaurarUltimaEntrada(removido.getEstLocal(), removido.getMedId());
+                    continue;
+                }
+
                 String estLocal = row[4];
                 String estValid = row[5];
                 int estQnt = Integer.parseInt(row[6]);
 
                 Registro reg = new Registro(estData, medId, estNat, estLocal, estValid, estQnt);
-                novoRegistro(reg, false);
+                int dataRegistro = reg.getDiaData();
+                if (dataRegistro == Datas.SEM_DATA) {
+                    ignorados++;
+                    continue;
+                }
+                EstadoLocal estadoLocal = estadoPorLocal.get(estLocal);
+                if (estadoLocal != null && estadoLocal.getUltimaData() > dataRegistro) {
+                    ignorados++;
+                    continue;
+                }
+                if (reg.getNatureza() == null) {
+                    ignorados++;
+                    continue;
+                }
+                if (reg.getNatureza() == Natureza.SAIDA && estQnt > saldoPorLocal.getOrDefault(estLocal, Map.of()).getOrDefault(medId, 0)) {
+                    ignorados++;
+                    continue;
+                }
+
+                reg.setEstId(estId);
+                lastEstId.accumulateAndGet(estId, Math::max);
+                reg.registrarLocal();
+                int linha = historico.adicionar(reg);
+                if (!indicesNoFim) {
+                    porData.inserir(linha);
+                }
+                Registro guardado = historico.getRegistro(linha);
+                atualizarSaldos(guardado, linha, 1);
+                if (!indicesNoFim) {
+                    saldoPorData.adicionar(linha);
+                }
+            } catch (RuntimeException e) {
+                ignorados++;
+            }
+        }
+
+        if (ignorados > 0) {
+            System.out.println(ignorados + " registros inválidos foram ignorados no upload desse arquivo.");
+        }
+        return lidas;
+    }
+
+    // Reinício: lê o snapshot e só as linhas anexadas ao diário depois dele. Sem um snapshot que corresponda
+    // ao diário lê o CSV inteiro, e grava um snapshot novo quando muitas linhas tiveram de vir do CSV.
+    public void carregar() {
+        travarTudo();
+        try {
+            diario.reparar();
+            int linhasCsv = lerSnapshot(caminhoSnapshot);
+            if (linhasCsv < 0) {
+                uploadCSV(diario.getCaminho());
+                linhasCsv = historico.getQuantidadeLinhas();
+            }
+            if (linhasCsv >= LINHAS_PARA_SNAPSHOT) {
+                salvarSnapshot(caminhoSnapshot);
+            }
+        } finally {
+            destravarTudo();
+        }
+    }
+
+    // Devolve false, sem alterar o estoque, quando o arquivo não existe ou não corresponde mais ao diário
+    public boolean carregarSnapshot(String caminho) {
+        return lerSnapshot(caminho) >= 0;
+    }
+
+    // Grava o estado completo, com índices e saldos já montados, em um arquivo binário (ver Snapshot)
+    public void salvarSnapshot(String caminho) {
+        // Com todas as travas nenhum registro está no meio da atualização dos saldos, e o tamanho do
+        // diário gravado no snapshot corresponde ao histórico em memória
+        travarTudo();
+        try {
+            diario.sincronizar();
+            try (Snapshot.Escrita saida = new Snapshot.Escrita(caminho, Snapshot.TIPO_ESTOQUE, diario.getCaminho())) {
+                escreverHistorico(saida);
+                saida.putInt(porData.tamanho());
+                saida.putInts(porData.paraArray(), porData.tamanho());
+                escreverSaldos(saida);
+                saldoPorData.salvar(saida);
+                saida.concluir();
+            } catch (IOException e) {
+                e.printStackTrace();
             }
+        } finally {
+            destravarTudo();
+        }
+    }
+
+    // Devolve quantas linhas do diário foram lidas depois do snapshot, ou -1 se ele não pôde ser usado
+    private int lerSnapshot(String caminho) {
+        Snapshot.Leitura entrada;
+        try {
+            entrada = Snapshot.Leitura.abrir(caminho, Snapshot.TIPO_ESTOQUE, diario.getCaminho());
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return -1;
+        }
+        if (entrada == null) {
+            return -1;
+        }
+
+        travarTudo();
+        try {
+            historico.limpar();
+            porData.limpar();
+            lastEstId.set(0);
+            limparSaldos();
+            try {
+                lerHistorico(entrada);
+                porData.definir(entrada.getInts(entrada.getInt()));
+                lerSaldos(entrada);
+                saldoPorData.carregar(entrada);
+            } catch (RuntimeException e) {
+                // Tamanhos ou índices inválidos (BufferUnderflowException, NegativeArraySizeException,
+                // IllegalArgumentException...): o snapshot não serve, e a carga volta ao CSV
+                e.printStackTrace();
+                historico.limpar();
+                porData.limpar();
+                lastEstId.set(0);
+                limparSaldos();
+                return -1;
+            }
+            return lerDiario(entrada.getTamanhoDiario());
+        } finally {
+            destravarTudo();
+        }
+    }
+
+    private int lerDiario(long posicao) {
+        File arquivo = new File(diario.getCaminho());
+        if (arquivo.length() <= posicao) {
+            return 0;
+        }
+        try (FileInputStream entrada = new FileInputStream(arquivo)) {
+            entrada.getChannel().position(posicao);
+            CSVReader reader = new CSVReader(new InputStreamReader(entrada, StandardCharsets.UTF_8));
+            if (posicao == 0) {
+                reader.skip(1);
+            }
+            return lerRegistros(reader, false);
         } catch (IOException | CsvException e) {
             e.printStackTrace();
+            return 0;
+        }
+    }
+
+    // Colunas do histórico, incluindo as linhas removidas, para que as linhas guardadas nos índices continuem valendo
+    private void escreverHistorico(Snapshot.Escrita saida) throws IOException {
+        int linhas = historico.getQuantidadeLinhas();
+        saida.putInt(linhas);
+        saida.putInt(lastEstId.get());
+
+        int[] coluna = new int[linhas];
+        for (int linha = 0; linha < linhas; linha++) {
+            coluna[linha] = historico.getEstId(linha);
+        }
+        saida.putInts(coluna, linhas);
+        for (int linha = 0; linha < linhas; linha++) {
+            coluna[linha] = historico.getDiaData(linha);
+        }
+        saida.putInts(coluna, linhas);
+        for (int linha = 0; linha < linhas; linha++) {
+            coluna[linha] = historico.getMedId(linha);
+        }
+        saida.putInts(coluna, linhas);
+        for (int linha = 0; linha < linhas; linha++) {
+            coluna[linha] = historico.getDiaValid(linha);
+        }
+        saida.putInts(coluna, linhas);
+        for (int linha = 0; linha < linhas; linha++) {
+            coluna[linha] = historico.getEstQnt(linha);
+        }
+        saida.putInts(coluna, linhas);
+        byte[] naturezas = new byte[linhas];
+        for (int linha = 0; linha < linhas; linha++) {
+            naturezas[linha] = (byte) historico.getNatureza(linha).ordinal();
+        }
+        saida.putBytes(naturezas, linhas);
+
+        // Índices da TabelaLocais, com os nomes usados em seguida: na carga a tabela pode ter outra numeração
+        BitSet locais = new BitSet();
+        for (int linha = 0; linha < linhas; linha++) {
+            coluna[linha] = historico.getLocalId(linha);
+            locais.set(coluna[linha]);
+        }
+        saida.putInts(coluna, linhas);
+        saida.putInt(locais.cardinality());
+        for (int id = locais.nextSetBit(0); id >= 0; id = locais.nextSetBit(id + 1)) {
+            saida.putInt(id);
+            saida.putTexto(TabelaLocais.paraNome(id));
+        }
+
+        ListaInt removidas = new ListaInt();
+        // Datas guardadas com outro texto que não o dd/MM/yyyy da conversão (só no histórico de objetos)
+        ListaInt foraDoFormato = new ListaInt();
+        for (int linha = 0; linha < linhas; linha++) {
+            if (historico.isRemovida(linha)) {
+                removidas.add(linha);
+            }
+            if (!historico.getEstData(linha).equals(Datas.formatar(historico.getDiaData(linha)))
+                    || !historico.getEstValid(linha).equals(Datas.formatar(historico.getDiaValid(linha)))) {
+                foraDoFormato.add(linha);
+            }
+        }
+        saida.putInt(removidas.size());
+        saida.putInts(removidas.paraArray(), removidas.size());
+        saida.putInt(foraDoFormato.size());
+        for (int i = 0; i < foraDoFormato.size(); i++) {
+            int linha = foraDoFormato.get(i);
+            saida.putInt(linha);
+            saida.putTexto(historico.getEstData(linha));
+            saida.putTexto(historico.getEstValid(linha));
+        }
+    }
+
+    private void lerHistorico(Snapshot.Leitura entrada) {
+        int linhas = entrada.getInt();
+        lastEstId.set(entrada.getInt());
+        int[] estIds = entrada.getInts(linhas);
+        int[] diasData = entrada.getInts(linhas);
+        int[] medIds = entrada.getInts(linhas);
+        int[] diasValid = entrada.getInts(linhas);
+        int[] quantidades = entrada.getInts(linhas);
+        byte[] naturezas = entrada.getBytes(linhas);
+        int[] locais = entrada.getInts(linhas);
+
+        int quantidadeLocais = entrada.getInt();
+        Map<Integer, Integer> traducao = new HashMap<>();
+        for (int i = 0; i < quantidadeLocais; i++) {
+            int id = entrada.getInt();
+            traducao.put(id, TabelaLocais.paraId(entrada.getTexto()));
+        }
+        int[] removidas = entrada.getInts(entrada.getInt());
+        int quantidadeForaDoFormato = entrada.getInt();
+        Map<Integer, String[]> foraDoFormato = new HashMap<>();
+        for (int i = 0; i < quantidadeForaDoFormato; i++) {
+            foraDoFormato.put(entrada.getInt(), new String[]{entrada.getTexto(), entrada.getTexto()});
+        }
+
+        Natureza[] valores = Natureza.values();
+        int[] localPorId = new int[1 + traducao.keySet().stream().mapToInt(Integer::intValue).max().orElse(0)];
+        for (Map.Entry<Integer, Integer> local : traducao.entrySet()) {
+            localPorId[local.getKey()] = local.getValue();
+        }
+        for (int linha = 0; linha < linhas; linha++) {
+            Natureza natureza = valores[naturezas[linha]];
+            int localId = localPorId[locais[linha]];
+            String[] textos = foraDoFormato.get(linha);
+            if (textos == null) {
+                historico.adicionar(estIds[linha], diasData[linha], medIds[linha], natureza, localId, diasValid[linha], quantidades[linha]);
+            } else {
+                Registro reg = new Registro(textos[0], medIds[linha], natureza.getDescricao(), TabelaLocais.paraNome(localId), textos[1], quantidades[linha]);
+                reg.setEstId(estIds[linha]);
+                historico.adicionar(reg);
+            }
+        }
+        for (int linha : removidas) {
+            historico.remover(linha);
+        }
+    }
+
+    // Mapas mantidos a cada registro. Os saldos por local e por medicamento são somas do detalhado, que
+    // recebe os mesmos movimentos, e a lista FEFO sai da validade vigente de cada local com saldo.
+    private void escreverSaldos(Snapshot.Escrita saida) throws IOException {
+        saida.putInt(estadoPorLocal.size());
+        for (Map.Entry<String, EstadoLocal> local : estadoPorLocal.entrySet()) {
+            EstadoLocal estadoLocal = local.getValue();
+            saida.putTexto(local.getKey());
+            saida.putInt(estadoLocal.getUltimaEntrada());
+            saida.putInt(estadoLocal.getSaldo());
+            saida.putInt(estadoLocal.getUltimaData());
+        }
+
+        // Agrupados por local e medicamento, como nos mapas, para que a carga crie cada mapa uma vez só
+        saida.putInt(saldoDetalhado.size());
+        for (Map.Entry<String, Map<Integer, Map<String, Integer>>> local : saldoDetalhado.entrySet()) {
+            saida.putTexto(local.getKey());
+            saida.putInt(local.getValue().size());
+            for (Map.Entry<Integer, Map<String, Integer>> med : local.getValue().entrySet()) {
+                saida.putInt(med.getKey());
+                saida.putInt(med.getValue().size());
+                for (Map.Entry<String, Integer> validade : med.getValue().entrySet()) {
+                    saida.putTexto(validade.getKey());
+                    saida.putInt(validade.getValue());
+                }
+            }
+        }
+
+        saida.putInt(validadePorLocal.size());
+        for (Map.Entry<String, Map<Integer, String>> local : validadePorLocal.entrySet()) {
+            saida.putTexto(local.getKey());
+            saida.putInt(local.getValue().size());
+            for (Map.Entry<Integer, String> med : local.getValue().entrySet()) {
+                saida.putInt(med.getKey());
+                saida.putTexto(med.getValue());
+            }
+        }
+
+        saida.putInt(lotes.size());
+        for (Map.Entry<String, Map<Integer, Map<String, SaldoLote>>> local : lotes.entrySet()) {
+            saida.putTexto(local.getKey());
+            saida.putInt(local.getValue().size());
+            for (Map.Entry<Integer, Map<String, SaldoLote>> med : local.getValue().entrySet()) {
+                saida.putInt(med.getKey());
+                saida.putInt(med.getValue().size());
+                for (Map.Entry<String, SaldoLote> validade : med.getValue().entrySet()) {
+                    ListaInt entradas = validade.getValue().getEntradas();
+                    saida.putTexto(validade.getKey());
+                    saida.putInt(validade.getValue().getSaldo());
+                    saida.putInt(entradas.size());
+                    saida.putInts(entradas.paraArray(), entradas.size());
+                }
+            }
+        }
+    }
+
+    private void lerSaldos(Snapshot.Leitura entrada) {
+        int locais = entrada.getInt();
+        for (int i = 0; i < locais; i++) {
+            EstadoLocal estadoLocal = new EstadoLocal();
+            String local = TabelaLocais.canonico(entrada.getTexto());
+            estadoLocal.setUltimaEntrada(entrada.getInt());
+            estadoLocal.somar(entrada.getInt());
+            estadoLocal.registrarData(entrada.getInt());
+            estadoPorLocal.put(local, estadoLocal);
+        }
+
+        int locaisDetalhados = entrada.getInt();
+        for (int i = 0; i < locaisDetalhados; i++) {
+            String local = TabelaLocais.canonico(entrada.getTexto());
+            int medicamentos = entrada.getInt();
+            Map<Integer, Map<String, Integer>> porMedicamento = new ConcurrentHashMap<>(medicamentos);
+            Map<Integer, Integer> saldos = new ConcurrentHashMap<>(medicamentos);
+            for (int m = 0; m < medicamentos; m++) {
+                int medId = entrada.getInt();
+                int validades = entrada.getInt();
+                Map<String, Integer> porValidade = new ConcurrentHashMap<>(validades);
+                int saldo = 0;
+                for (int v = 0; v < validades; v++) {
+                    String validade = entrada.getTexto();
+                    int quantidade = entrada.getInt();
+                    porValidade.put(validade, quantidade);
+                    saldo += quantidade;
+                }
+                porMedicamento.put(medId, porValidade);
+                saldos.put(medId, saldo);
+                saldoPorMedicamento.merge(medId, saldo, Integer::sum);
+            }
+            saldoDetalhado.put(local, porMedicamento);
+            saldoPorLocal.put(local, saldos);
+        }
+
+        int locaisComValidade = entrada.getInt();
+        for (int i = 0; i < locaisComValidade; i++) {
+            String local = TabelaLocais.canonico(entrada.getTexto());
+            int medicamentos = entrada.getInt();
+            Map<Integer, String> validades = new ConcurrentHashMap<>(medicamentos);
+            validadePorLocal.put(local, validades);
+            for (int m = 0; m < medicamentos; m++) {
+                int medId = entrada.getInt();
+                String validade = entrada.getTexto();
+                validades.put(medId, validade);
+                if (getSaldo(local, medId) > 0) {
+                    lotesPorMedicamento.computeIfAbsent(medId, k -> new ConcurrentSkipListSet<>()).add(new Lote(medId, local, validade));
+                }
+            }
+        }
+
+        int locaisComLotes = entrada.getInt();
+        for (int i = 0; i < locaisComLotes; i++) {
+            String local = TabelaLocais.canonico(entrada.getTexto());
+            int medicamentos = entrada.getInt();
+            Map<Integer, Map<String, SaldoLote>> porMedicamento = new ConcurrentHashMap<>(medicamentos);
+            for (int m = 0; m < medicamentos; m++) {
+                int medId = entrada.getInt();
+                int validades = entrada.getInt();
+                Map<String, SaldoLote> porValidade = new ConcurrentHashMap<>(validades);
+                for (int v = 0; v < validades; v++) {
+                    String validade = entrada.getTexto();
+                    int saldo = entrada.getInt();
+                    porValidade.put(validade, new SaldoLote(new ListaInt(entrada.getInts(entrada.getInt())), saldo));
+                    // O índice de validades não é gravado: sai dos próprios lotes
+                    indexarValidade(medId, local, validade, false, saldo > 0);
+                }
+                porMedicamento.put(medId, porValidade);
+            }
+            lotes.put(local, porMedicamento);
         }
     }
 
     public void saveCSV(String filePath) {
+        travaHistorico.readLock().lock();
         try (CSVWriter writer = new CSVWriter(new FileWriter(filePath))) {
-            String[] header = {"ID", "Data", "ID Medicamento", "Natureza", "Local", "Validade", "Quantidade"};
-            writer.writeNext(header);
-
-            for (Registro reg : estoque) {
-                String[] data = {
-                        String.valueOf(reg.getEstId()),
-                        reg.getEstData(),
-                        String.valueOf(reg.getMedId()),
-                        reg.getEstNat(),
-                        reg.getEstLocal(),
-                        reg.getEstValid(),
-                        String.valueOf(reg.getEstQnt())
-                };
-                writer.writeNext(data);
+            writer.writeNext(CABECALHO);
+
+            for (int linha = 0; linha < historico.getQuantidadeLinhas(); linha++) {
+                if (!historico.isRemovida(linha)) {
+                    writer.writeNext(paraLinha(linha));
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            travaHistorico.readLock().unlock();
         }
     }
 
+    private String[] paraRemocao(int linha) {
+        String[] campos = paraLinha(linha);
+        campos[3] = REMOCAO;
+        return campos;
+    }
+
+    private String[] paraLinha(int linha) {
+        return new String[]{
+                String.valueOf(historico.getEstId(linha)),
+                historico.getEstData(linha),
+                String.valueOf(historico.getMedId(linha)),
+                historico.getNatureza(linha).getDescricao(),
+                TabelaLocais.paraNome(historico.getLocalId(linha)),
+                historico.getEstValid(linha),
+                String.valueOf(historico.getEstQnt(linha))
+        };
+    }
+
+    private String[] paraLinha(Registro reg) {
+        return new String[]{
+                String.valueOf(reg.getEstId()),
+                reg.getEstData(),
+                String.valueOf(reg.getMedId()),
+                reg.getEstNat(),
+                reg.getEstLocal(),
+                reg.getEstValid(),
+                String.valueOf(reg.getEstQnt())
+        };
+    }
+
     public Map<Integer, Map<String, Integer>> estoqueAtualPorLocal(String dt, List<Integer> medIdList) {
-        List<Registro> filtro = new ArrayList<>(estoque);
-        filtro.removeIf(registro -> registro.getEstData().compareTo(dt) > 0);
-        if (medIdList != null && !medIdList.isEmpty()) {
-            filtro.removeIf(registro -> !medIdList.contains(registro.getMedId()));
-        }
+        return estoqueAtualPorLocal(Datas.paraDia(dt), medIdList);
+    }
 
-        Map<Integer, Map<String, Integer>> medDic = new HashMap<>();
-        for (Registro reg : filtro) {
-            medDic.putIfAbsent(reg.getMedId(), new HashMap<>());
-            medDic.get(reg.getMedId()).putIfAbsent(reg.getEstLocal(), 0);
-            medDic.get(reg.getMedId()).compute(reg.getEstLocal(), (k, v) -> v + (reg.getEstQnt() * (reg.getEstNat().equals("Saída") ? -1 : 1)));
+    public Map<Integer, Map<String, Integer>> estoqueAtualPorLocal(int dia, List<Integer> medIdList) {
+        travaHistorico.readLock().lock();
+        try {
+            return saldoPorData.saldoEm(dia, medIdList);
+        } finally {
+            travaHistorico.readLock().unlock();
         }
+    }
 
-        return medDic;
+    // Estoque total de cada medicamento na data informada; medIds nulo ou vazio considera todos
+    public Map<Integer, Integer> getEstoqueNaData(String data, Collection<Integer> medIds) {
+        Map<Integer, Map<String, Integer>> saldos;
+        travaHistorico.readLock().lock();
+        try {
+            saldos = saldoPorData.saldoEm(Datas.paraDia(data), medIds);
+        } finally {
+            travaHistorico.readLock().unlock();
+        }
+        Map<Integer, Integer> estoqueNaData = new HashMap<>();
+        for (Map.Entry<Integer, Map<String, Integer>> med : saldos.entrySet()) {
+            int total = 0;
+            for (int quantidade : med.getValue().values()) {
+                total += quantidade;
+            }
+            estoqueNaData.put(med.getKey(), total);
+        }
+        return estoqueNaData;
     }
 
-    public List<Registro> getEstoquePorLote(int medId, String local, String validade) {
-        List<Registro> lotes = new ArrayList<>();
-        for (Registro reg : estoque) {
-            if (reg.getMedId() == medId && reg.getEstLocal().equals(local) && reg.getEstValid().equals(validade) && reg.getEstNat().equals("Entrada")) {
-                lotes.add(reg);
+    // IDs dos registros de inicio a fim (dias, inclusive) em ordem de data, lidos com uma trava só. Ao contrário
+    // das posições no índice por data, os IDs não mudam quando outros registros entram ou saem.
+    public int[] getIdsPorPeriodo(int inicio, int fim) {
+        travaHistorico.readLock().lock();
+        try {
+            int primeira = porData.posicao(inicio);
+            int ultima = porData.posicao(fim + 1);
+            int[] ids = new int[Math.max(0, ultima - primeira)];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = historico.getEstId(porData.get(primeira + i));
             }
+            return ids;
+        } finally {
+            travaHistorico.readLock().unlock();
         }
-        return lotes;
     }
 
-    public Map<String, Map<Integer, Map<String, Integer>>> getEstoqueAtualDetalhado() {
-        Map<String, Map<Integer, Map<String, Integer>>> estoqueDetalhado = new HashMap<>();
+    // null se o registro foi removido depois que o ID foi lido
+    public Registro getRegistroPorId(int estId) {
+        travaHistorico.readLock().lock();
+        try {
+            int linha = linhaPorId(estId);
+            return linha < 0 ? null : historico.getRegistro(linha);
+        } finally {
+            travaHistorico.readLock().unlock();
+        }
+    }
 
-        for (Registro reg : estoque) {
-            if (!estoqueDetalhado.containsKey(reg.getEstLocal())) {
-                estoqueDetalhado.put(reg.getEstLocal(), new HashMap<>());
+    // Registros de inicio a fim (dias, inclusive) em ordem de data, no máximo limite deles. Lidos com uma
+    // trava só, para que um registro novo no meio do período não desloque as posições durante a leitura.
+    public List<Registro> getRegistrosPorPeriodo(int inicio, int fim, int limite) {
+        travaHistorico.readLock().lock();
+        try {
+            int primeira = porData.posicao(inicio);
+            int ultima = Math.min(porData.posicao(fim + 1), primeira + limite);
+            List<Registro> registros = new ArrayList<>(Math.max(0, ultima - primeira));
+            for (int posicao = primeira; posicao < ultima; posicao++) {
+                registros.add(historico.getRegistro(porData.get(posicao)));
             }
-            if (!estoqueDetalhado.get(reg.getEstLocal()).containsKey(reg.getMedId())) {
-                estoqueDetalhado.get(reg.getEstLocal()).put(reg.getMedId(), new HashMap<>());
+            return registros;
+        } finally {
+            travaHistorico.readLock().unlock();
+        }
+    }
+
+    // Entradas que formaram o lote
+    public List<Registro> getEstoquePorLote(int medId, String local, String validade) {
+        ReentrantLock travaLocal = travaDoLocal(local);
+        travaLocal.lock();
+        travaHistorico.readLock().lock();
+        try {
+            SaldoLote lote = getLote(local, medId, validade);
+            if (lote == null) {
+                return List.of();
             }
-            if (!estoqueDetalhado.get(reg.getEstLocal()).get(reg.getMedId()).containsKey(reg.getEstValid())) {
-                estoqueDetalhado.get(reg.getEstLocal()).get(reg.getMedId()).put(reg.getEstValid(), 0);
+            List<Registro> entradas = new ArrayList<>(lote.getEntradas().size());
+            for (int i = 0; i < lote.getEntradas().size(); i++) {
+                entradas.add(historico.getRegistro(lote.getEntradas().get(i)));
             }
+            return entradas;
+        } finally {
+            travaHistorico.readLock().unlock();
+            travaLocal.unlock();
+        }
+    }
+
+    // Quantidade que ainda resta do lote, já descontadas as saídas
+    public int getSaldoLote(int medId, String local, String validade) {
+        ReentrantLock travaLocal = travaDoLocal(local);
+        travaLocal.lock();
+        try {
+            SaldoLote lote = getLote(local, medId, validade);
+            return lote == null ? 0 : lote.getSaldo();
+        } finally {
+            travaLocal.unlock();
+        }
+    }
 
-            int quantidade = estoqueDetalhado.get(reg.getEstLocal()).get(reg.getMedId()).get(reg.getEstValid());
-            if (reg.getEstNat().equals("Entrada")) {
-                quantidade += reg.getEstQnt();
-            } else if (reg.getEstNat().equals("Saída")) {
-                quantidade -= reg.getEstQnt();
+    // Os IDs crescem junto com as linhas: os novos registros recebem lastEstId + 1 e a carga mantém a ordem do arquivo
+    private int linhaPorId(int estId) {
+        int baixo = 0;
+        int alto = historico.getQuantidadeLinhas() - 1;
+        while (baixo <= alto) {
+            int meio = (baixo + alto) >>> 1;
+            int id = historico.getEstId(meio);
+            if (id < estId) {
+                baixo = meio + 1;
+            } else if (id > estId) {
+                alto = meio - 1;
+            } else {
+                return historico.isRemovida(meio) ? -1 : meio;
             }
+        }
+        return -1;
+    }
 
-            estoqueDetalhado.get(reg.getEstLocal()).get(reg.getMedId()).put(reg.getEstValid(), quantidade);
+    public Map<String, Map<Integer, Map<String, Integer>>> getEstoqueAtualDetalhado() {
+        return Collections.unmodifiableMap(saldoDetalhado);
+    }
+
+    // Recalcula os saldos e as validades percorrendo todo o histórico, sem usar os mapas mantidos a cada
+    // registro. Depois de remoções de lotes os mapas mantidos podem guardar saldos zerados que o recálculo não tem.
+    public RecalculoSaldos recalcularSaldos() {
+        travaHistorico.readLock().lock();
+        try {
+            return RecalculoSaldos.sequencial(historico);
+        } finally {
+            travaHistorico.readLock().unlock();
         }
+    }
 
-        return estoqueDetalhado;
+    // Mesmo resultado de recalcularSaldos(), com o histórico dividido em trechos somados no pool. As
+    // tarefas do pool leem o histórico enquanto esta thread mantém a trava compartilhada.
+    public RecalculoSaldos recalcularSaldos(ForkJoinPool pool) {
+        travaHistorico.readLock().lock();
+        try {
+            return RecalculoSaldos.paralelo(historico, pool);
+        } finally {
+            travaHistorico.readLock().unlock();
+        }
     }
 
     public List<Registro> verificarValidade() {
-        List<Registro> registrosVencidos = new ArrayList<>();
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
-        Date hoje = new Date();
+        return verificarValidade(0);
+    }
 
-        Map<Integer, Map<String, Integer>> estoqueAtual = estoqueAtualPorLocal(sdf.format(hoje), null);
+    // Entradas dos lotes vencidos ou que vencem nos próximos dias, em ordem de validade, que ainda têm
+    // saldo. Percorre apenas os lotes com saldo do índice de validades até o limite.
+    public List<Registro> verificarValidade(int dias) {
+        List<Registro> registrosVencidos = new ArrayList<>();
+        int limite = Datas.hoje() + dias;
 
-        for (Registro reg : estoque) {
-            if (reg.getEstNat().equals("Entrada")) {
-                try {
-                    Date validade = sdf.parse(reg.getEstValid());
-                    if (validade.before(sdf.parse(sdf.format(hoje)))) {
-                        if (estoqueAtual.containsKey(reg.getMedId())) {
-                            if (estoqueAtual.get(reg.getMedId()).containsKey(reg.getEstLocal())) {
-                                if (estoqueAtual.get(reg.getMedId()).get(reg.getEstLocal()) > 0) {
-                                    registrosVencidos.add(reg);
-                                }
-                            }
-                        }
+        travaHistorico.readLock().lock();
+        try {
+            for (NavigableSet<Lote> doDia : lotesPorValidade.headMap(limite, false).values()) {
+                for (Lote lote : doDia) {
+                    SaldoLote saldo = getLote(lote.getLocal(), lote.getMedId(), lote.getValidade());
+                    if (saldo == null || saldo.getSaldo() <= 0) {
+                        continue;
+                    }
+                    for (int linha : saldo.getLinhasEntradas()) {
+                        registrosVencidos.add(historico.getRegistro(linha));
                     }
-                } catch (ParseException e) {
-                    e.printStackTrace();
                 }
             }
+        } finally {
+            travaHistorico.readLock().unlock();
         }
 
         return registrosVencidos;
     }
 
+    public boolean existemVencidos() {
+        travaHistorico.readLock().lock();
+        try {
+            for (NavigableSet<Lote> doDia : lotesPorValidade.headMap(Datas.hoje(), false).values()) {
+                for (Lote lote : doDia) {
+                    // Sem a trava do local, que vem antes da do histórico: o SaldoLote se protege sozinho
+                    SaldoLote saldo = getLote(lote.getLocal(), lote.getMedId(), lote.getValidade());
+                    if (saldo != null && saldo.getSaldo() > 0) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            travaHistorico.readLock().unlock();
+        }
+    }
+
+    // Remove as entradas do lote sem reescrever o arquivo: cada remoção é anexada ao diário como uma
+    // linha de natureza "Remoção" com o ID do registro removido, e some na próxima compactação. Em memória
+    // cada linha removida ainda desloca o índice por data e atualiza os checkpoints seguintes (ver
+    // IndicePorData.remover e SaldoPorData.remover), o que custa O(n) por linha.
     public void removerRegistroVencido(int medId, String local, String validade) {
-        estoque.removeIf(reg -> reg.getMedId() == medId && reg.getEstLocal().equals(local) && reg.getEstValid().equals(validade) && reg.getEstNat().equals("Entrada"));
-        saveCSV("src/hist_estoque.csv");
+        long sequencia = 0;
+        ReentrantLock travaLocal = travaDoLocal(local);
+        travaLocal.lock();
+        try {
+            SaldoLote lote = getLote(local, medId, validade);
+            if (lote == null) {
+                return;
+            }
+
+            int[] linhas = lote.getLinhasEntradas();
+            Registro[] removidos = new Registro[linhas.length];
+            // Como em registrar: o diário primeiro, só com a trava dele, e o histórico em memória só muda se
+            // ele foi gravado
+            List<String[]> remocoes = new ArrayList<>(linhas.length);
+            travaHistorico.readLock().lock();
+            try {
+                for (int linha : linhas) {
+                    remocoes.add(paraRemocao(linha));
+                }
+            } finally {
+                travaHistorico.readLock().unlock();
+            }
+            diario.travar();
+            try {
+                sequencia = diario.escrever(remocoes);
+                travaHistorico.writeLock().lock();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            } finally {
+                diario.destravar();
+            }
+            try {
+                for (int i = 0; i < linhas.length; i++) {
+                    int linha = linhas[i];
+                    removidos[i] = historico.getRegistro(linha);
+                    porData.remover(linha);
+                    historico.remover(linha);
+                    saldoPorData.remover(linha);
+                }
+                travaHistorico.readLock().lock();
+            } finally {
+                travaHistorico.writeLock().unlock();
+            }
+            try {
+                for (int i = 0; i < linhas.length; i++) {
+                    atualizarSaldos(removidos[i], linhas[i], -1);
+                }
+                restaurarUltimaEntrada(local, medId);
+            } finally {
+                travaHistorico.readLock().unlock();
+            }
+        } finally {
+            travaLocal.unlock();
+        }
+        diario.aguardar(sequencia);
     }
-}
 
+    // A última entrada e a validade do local podem ter sido removidas; recupera as anteriores
+    // a partir da entrada mais recente de cada lote que ainda existe no local
+    private void restaurarUltimaEntrada(String local, int medId) {
+        EstadoLocal estadoLocal = estadoPorLocal.computeIfAbsent(local, k -> new EstadoLocal());
+        estadoLocal.setUltimaEntrada(-1);
+        definirValidade(local, medId, null);
+
+        ListaInt ultimas = new ListaInt();
+        for (Map<String, SaldoLote> porValidade : lotes.getOrDefault(local, Map.of()).values()) {
+            for (SaldoLote restante : porValidade.values()) {
+                ultimas.add(restante.getUltimaEntrada());
+            }
+        }
+        // Linhas crescem na ordem de inclusão
+        int[] linhas = ultimas.paraArray();
+        Arrays.sort(linhas);
+        for (int linha : linhas) {
+            estadoLocal.setUltimaEntrada(linha);
+            if (historico.getMedId(linha) == medId) {
+                atualizarValidade(historico.getRegistro(linha));
+            }
+        }
+    }
+}
@@ -1,3 +1,5 @@
+package poofinal;
+
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
@@ -6,6 +8,7 @@ import java.util.Map;
 public class EstoqueAtualPanel extends JPanel {
     private JTable table;
     private DefaultTableModel tableModel;
+    private ConsultaTabela consulta;
     private Estoque estoque;
     private CadastroMedicamentos cadastro;
     private JComboBox<String> viewComboBox;
@@ -28,6 +31,7 @@ public class EstoqueAtualPanel extends JPanel {
         add(optionsPanel, BorderLayout.NORTH);
 
         tableModel = new DefaultTableModel();
+        consulta = new ConsultaTabela(tableModel);
         table = new JTable(tableModel);
         JScrollPane scrollPane = new JScrollPane(table);
         add(scrollPane, BorderLayout.CENTER);
@@ -42,41 +46,45 @@ public class EstoqueAtualPanel extends JPanel {
     }
 
     public void loadEstoqueAtual() {
-        tableModel.setRowCount(0);
+        consulta.cancelar();
 
         if (viewComboBox.getSelectedItem().equals("Por Medicamento")) {
             tableModel.setColumnIdentifiers(new String[]{"ID Medicamento", "Nome", "Quantidade"});
 
             Map<Integer, Integer> estoquePorMedicamento = estoque.getEstoqueAtualPorMedicamento();
 
-            for (Map.Entry<Integer, Integer> entry : estoquePorMedicamento.entrySet()) {
-                int medId = entry.getKey();
-                int quantidade = entry.getValue();
-                Medicamento med = cadastro.getMedicamento(medId);
-                String medNome = med != null ? med.getMedNome() : "Desconhecido";
+            consulta.executar(linhas -> {
+                for (Map.Entry<Integer, Integer> entry : estoquePorMedicamento.entrySet()) {
+                    int medId = entry.getKey();
+                    int quantidade = entry.getValue();
+                    Medicamento med = cadastro.getMedicamento(medId);
+                    String medNome = med != null ? med.getMedNome() : "Desconhecido";
 
-                if (quantidade > 0) {
-                    tableModel.addRow(new Object[]{medId, medNome, quantidade});
+                    if (quantidade > 0) {
+                        linhas.accept(new Object[]{medId, medNome, quantidade});
+                    }
                 }
-            }
+            });
         } else if (viewComboBox.getSelectedItem().equals("Por Local")) {
             tableModel.setColumnIdentifiers(new String[]{"Local", "ID Medicamento", "Nome", "Quantidade", "Validade"});
 
             Map<String, Map<Integer, Integer>> estoquePorLocal = estoque.getEstoqueAtualPorLocal();
             Map<String, Map<Integer, String>> validadePorLocal = estoque.getValidadePorLocal();
 
-            for (String local : estoquePorLocal.keySet()) {
-                for (Integer medId : estoquePorLocal.get(local).keySet()) {
-                    Medicamento med = cadastro.getMedicamento(medId);
-                    String medNome = med != null ? med.getMedNome() : "Desconhecido";
-                    int quantidade = estoquePorLocal.get(local).get(medId);
-                    String validade = validadePorLocal.get(local).get(medId);
-
-                    if (quantidade > 0) {
-                        tableModel.addRow(new Object[]{local, medId, medNome, quantidade, validade});
+            consulta.executar(linhas -> {
+                for (String local : estoquePorLocal.keySet()) {
+                    for (Integer medId : estoquePorLocal.get(local).keySet()) {
+                        Medicamento med = cadastro.getMedicamento(medId);
+                        String medNome = med != null ? med.getMedNome() : "Desconhecido";
+                        int quantidade = estoquePorLocal.get(local).get(medId);
+                        String validade = validadePorLocal.get(local).get(medId);
+
+                        if (quantidade > 0) {
+                            linhas.accept(new Object[]{local, medId, medNome, quantidade, validade});
+                        }
                     }
                 }
-            }
+            });
         }
     }
 }
@@ -1,3 +1,5 @@
+package poofinal;
+
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -15,6 +17,7 @@ public class FiltroMedicamentoPanel extends JPanel {
     private JTextField searchField;
     private JTable medicamentosTable;
     private DefaultTableModel medicamentosTableModel;
+    private ConsultaTabela consulta;
     private JTable selecionadosTable;
     private DefaultTableModel selecionadosTableModel;
     private Estoque estoque;
@@ -66,6 +69,7 @@ public class FiltroMedicamentoPanel extends JPanel {
                 return column == 2;
             }
         };
+        consulta = new ConsultaTabela(medicamentosTableModel);
         medicamentosTable = new JTable(medicamentosTableModel);
         medicamentosTableModel.addTableModelListener(e -> {
             if (e.getType() == TableModelEvent.UPDATE && e.getColumn() == 2) {
@@ -146,27 +150,62 @@ public class FiltroMedicamentoPanel extends JPanel {
         });
         botoesPanel.add(gerarRelatorioButton);
 
+        JButton equivalentesButton = new JButton("Equivalentes em estoque");
+        equivalentesButton.addActionListener(e -> mostrarEquivalentes());
+        botoesPanel.add(equivalentesButton);
+
         add(botoesPanel, BorderLayout.SOUTH);
 
         loadAllMedicamentos();
     }
 
     private void loadAllMedicamentos() {
-        medicamentosTableModel.setRowCount(0);
-        for (Medicamento med : cadastro.getMedicamentos()) {
-            boolean isSelected = selecionadosIds.contains(med.getMedId());
-            medicamentosTableModel.addRow(new Object[]{med.getMedId(), med.getMedNome(), isSelected});
-        }
+        filterMedicamentos();
     }
 
+    // A cada tecla: os IDs vêm do índice de busca do cadastro, e a tabela é preenchida em lotes fora da
+    // thread da interface. Texto vazio lista todos os medicamentos.
     private void filterMedicamentos() {
-        String filterText = searchField.getText().toLowerCase();
-        medicamentosTableModel.setRowCount(0);
-        for (Medicamento med : cadastro.getMedicamentos()) {
-            if (med.getMedNome().toLowerCase().contains(filterText)) {
-                boolean isSelected = selecionadosIds.contains(med.getMedId());
-                medicamentosTableModel.addRow(new Object[]{med.getMedId(), med.getMedNome(), isSelected});
+        String filterText = searchField.getText();
+        // Cópia: a consulta roda em outra thread enquanto a seleção pode mudar
+        Set<Integer> selecionados = new HashSet<>(selecionadosIds);
+        consulta.executar(linhas -> {
+            ListaInt ids = cadastro.buscar(filterText, IndiceBusca.Campo.NOME);
+            for (int i = 0; i < ids.size(); i++) {
+                Medicamento med = cadastro.getMedicamento(ids.get(i));
+                linhas.accept(new Object[]{med.getMedId(), med.getMedNome(), selecionados.contains(med.getMedId())});
             }
+        });
+    }
+
+    // Para um medicamento em falta: os de mesmos princípios ativos e dosagens que têm saldo, com a opção
+    // de selecioná-los para o relatório
+    private void mostrarEquivalentes() {
+        int row = medicamentosTable.getSelectedRow();
+        if (row < 0) {
+            JOptionPane.showMessageDialog(this, "Selecione um medicamento na lista.", "Erro", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        int medId = (int) medicamentosTableModel.getValueAt(medicamentosTable.convertRowIndexToModel(row), 0);
+        Medicamento med = cadastro.getMedicamento(medId);
+        Map<Integer, Integer> equivalentes = estoque.getEquivalentesEmEstoque(medId);
+        if (equivalentes.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Nenhum equivalente de " + med.getMedNome() + " em estoque.");
+            return;
+        }
+
+        StringBuilder mensagem = new StringBuilder("Equivalentes de " + med.getMedNome() + " em estoque:\n\n");
+        for (Map.Entry<Integer, Integer> equivalente : equivalentes.entrySet()) {
+            mensagem.append(equivalente.getKey()).append(" - ")
+                    .append(cadastro.getMedicamento(equivalente.getKey()).getMedNome())
+                    .append(": ").append(equivalente.getValue()).append("\n");
+        }
+        mensagem.append("\nSelecionar os equivalentes?");
+        int resposta = JOptionPane.showConfirmDialog(this, mensagem.toString(), "Equivalentes", JOptionPane.YES_NO_OPTION);
+        if (resposta == JOptionPane.YES_OPTION) {
+            selecionadosIds.addAll(equivalentes.keySet());
+            atualizarSelecionados();
+            filterMedicamentos();
         }
     }
 
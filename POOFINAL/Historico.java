@@ -0,0 +1,41 @@
+package poofinal;
+
+// Armazenamento dos movimentos do estoque. Cada movimento é identificado pela sua linha, que
+// não muda enquanto o histórico estiver carregado: os índices do Estoque guardam linhas, e uma
+// remoção apenas marca a linha, que deixa de existir na próxima carga do arquivo.
+interface Historico {
+    // Acrescenta o movimento (já com o ID definido) e devolve a linha dele
+    int adicionar(Registro reg);
+
+    // Mesmo que adicionar(Registro), com as datas já convertidas em dias e em dd/MM/yyyy
+    int adicionar(int estId, int diaData, int medId, Natureza natureza, int localId, int diaValid, int estQnt);
+
+    void remover(int linha);
+
+    boolean isRemovida(int linha);
+
+    // Total de linhas, incluindo as removidas
+    int getQuantidadeLinhas();
+
+    int getEstId(int linha);
+
+    int getMedId(int linha);
+
+    int getLocalId(int linha);
+
+    Natureza getNatureza(int linha);
+
+    int getDiaData(int linha);
+
+    int getDiaValid(int linha);
+
+    int getEstQnt(int linha);
+
+    String getEstData(int linha);
+
+    String getEstValid(int linha);
+
+    Registro getRegistro(int linha);
+
+    void limpar();
+}
@@ -0,0 +1,145 @@
+package poofinal;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Histórico em colunas de tipos primitivos, alocadas em blocos de tamanho fixo: cada movimento
+// ocupa seis int e um byte, sem objeto nem String. As datas são guardadas como dias e voltam a
+// ser texto (dd/MM/yyyy) só quando um Registro é montado para exibição ou para o CSV.
+class HistoricoColunar implements Historico {
+    private static final int BITS_BLOCO = 14;
+    private static final int TAMANHO_BLOCO = 1 << BITS_BLOCO;
+    private static final int MASCARA = TAMANHO_BLOCO - 1;
+    private static final Natureza[] NATUREZAS = Natureza.values();
+
+    private int[][] estId;
+    private int[][] medId;
+    private int[][] localId;
+    private int[][] diaData;
+    private int[][] diaValid;
+    private int[][] estQnt;
+    private byte[][] natureza;
+    private BitSet removidas;
+    private int tamanho;
+
+    public HistoricoColunar() {
+        limpar();
+    }
+
+    @Override
+    public int adicionar(Registro reg) {
+        return adicionar(reg.getEstId(), reg.getDiaData(), reg.getMedId(), reg.getNatureza(), reg.getLocalId(), reg.getDiaValid(), reg.getEstQnt());
+    }
+
+    @Override
+    public int adicionar(int id, int dia, int med, Natureza nat, int local, int validade, int quantidade) {
+        int bloco = tamanho >>> BITS_BLOCO;
+        if (bloco == estId.length) {
+            int blocos = bloco * 2;
+            estId = Arrays.copyOf(estId, blocos);
+            medId = Arrays.copyOf(medId, blocos);
+            localId = Arrays.copyOf(localId, blocos);
+            diaData = Arrays.copyOf(diaData, blocos);
+            diaValid = Arrays.copyOf(diaValid, blocos);
+            estQnt = Arrays.copyOf(estQnt, blocos);
+            natureza = Arrays.copyOf(natureza, blocos);
+        }
+        if (estId[bloco] == null) {
+            estId[bloco] = new int[TAMANHO_BLOCO];
+            medId[bloco] = new int[TAMANHO_BLOCO];
+            localId[bloco] = new int[TAMANHO_BLOCO];
+            diaData[bloco] = new int[TAMANHO_BLOCO];
+            diaValid[bloco] = new int[TAMANHO_BLOCO];
+            estQnt[bloco] = new int[TAMANHO_BLOCO];
+            natureza[bloco] = new byte[TAMANHO_BLOCO];
+        }
+
+        int i = tamanho & MASCARA;
+        estId[bloco][i] = id;
+        medId[bloco][i] = med;
+        localId[bloco][i] = local;
+        diaData[bloco][i] = dia;
+        diaValid[bloco][i] = validade;
+        estQnt[bloco][i] = quantidade;
+        natureza[bloco][i] = (byte) nat.ordinal();
+        return tamanho++;
+    }
+
+    @Override
+    public void remover(int linha) {
+        removidas.set(linha);
+    }
+
+    @Override
+    public boolean isRemovida(int linha) {
+        return removidas.get(linha);
+    }
+
+    @Override
+    public int getQuantidadeLinhas() {
+        return tamanho;
+    }
+
+    @Override
+    public int getEstId(int linha) {
+        return estId[linha >>> BITS_BLOCO][linha & MASCARA];
+    }
+
+    @Override
+    public int getMedId(int linha) {
+        return medId[linha >>> BITS_BLOCO][linha & MASCARA];
+    }
+
+    @Override
+    public int getLocalId(int linha) {
+        return localId[linha >>> BITS_BLOCO][linha & MASCARA];
+    }
+
+    @Override
+    public Natureza getNatureza(int linha) {
+        return NATUREZAS[natureza[linha >>> BITS_BLOCO][linha & MASCARA]];
+    }
+
+    @Override
+    public int getDiaData(int linha) {
+        return diaData[linha >>> BITS_BLOCO][linha & MASCARA];
+    }
+
+    @Override
+    public int getDiaValid(int linha) {
+        return diaValid[linha >>> BITS_BLOCO][linha & MASCARA];
+    }
+
+    @Override
+    public int getEstQnt(int linha) {
+        return estQnt[linha >>> BITS_BLOCO][linha & MASCARA];
+    }
+
+    @Override
+    public String getEstData(int linha) {
+        return Datas.formatar(getDiaData(linha));
+    }
+
+    @Override
+    public String getEstValid(int linha) {
+        return Datas.formatar(getDiaValid(linha));
+    }
+
+    @Override
+    public Registro getRegistro(int linha) {
+        return new Registro(getEstId(linha), getDiaData(linha), getMedId(linha), getNatureza(linha), getLocalId(linha), getDiaValid(linha), getEstQnt(linha));
+    }
+
+    @Override
+    public void limpar() {
+        estId = new int[1][];
+        medId = new int[1][];
+        localId = new int[1][];
+        diaData = new int[1][];
+        diaValid = new int[1][];
+        estQnt = new int[1][];
+        natureza = new byte[1][];
+        removidas = new BitSet();
+        tamanho = 0;
+    }
+}
@@ -0,0 +1,98 @@
+package poofinal;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+// Histórico com um objeto Registro por movimento
+class HistoricoObjetos implements Historico {
+    private List<Registro> registros;
+    private BitSet removidas;
+
+    public HistoricoObjetos() {
+        this.registros = new ArrayList<>();
+        this.removidas = new BitSet();
+    }
+
+    @Override
+    public int adicionar(Registro reg) {
+        registros.add(reg);
+        return registros.size() - 1;
+    }
+
+    @Override
+    public int adicionar(int estId, int diaData, int medId, Natureza natureza, int localId, int diaValid, int estQnt) {
+        return adicionar(new Registro(estId, diaData, medId, natureza, localId, diaValid, estQnt));
+    }
+
+    @Override
+    public void remover(int linha) {
+        removidas.set(linha);
+    }
+
+    @Override
+    public boolean isRemovida(int linha) {
+        return removidas.get(linha);
+    }
+
+    @Override
+    public int getQuantidadeLinhas() {
+        return registros.size();
+    }
+
+    @Override
+    public int getEstId(int linha) {
+        return registros.get(linha).getEstId();
+    }
+
+    @Override
+    public int getMedId(int linha) {
+        return registros.get(linha).getMedId();
+    }
+
+    @Override
+    public int getLocalId(int linha) {
+        return registros.get(linha).getLocalId();
+    }
+
+    @Override
+    public Natureza getNatureza(int linha) {
+        return registros.get(linha).getNatureza();
+    }
+
+    @Override
+    public int getDiaData(int linha) {
+        return registros.get(linha).getDiaData();
+    }
+
+    @Override
+    public int getDiaValid(int linha) {
+        return registros.get(linha).getDiaValid();
+    }
+
+    @Override
+    public int getEstQnt(int linha) {
+        return registros.get(linha).getEstQnt();
+    }
+
+    @Override
+    public String getEstData(int linha) {
+        return registros.get(linha).getEstData();
+    }
+
+    @Override
+    public String getEstValid(int linha) {
+        return registros.get(linha).getEstValid();
+    }
+
+    @Override
+    public Registro getRegistro(int linha) {
+        return registros.get(linha);
+    }
+
+    @Override
+    public void limpar() {
+        registros.clear();
+        removidas.clear();
+    }
+}
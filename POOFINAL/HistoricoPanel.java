@@ -1,15 +1,15 @@
+package poofinal;
+
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.text.MaskFormatter;
 import java.awt.*;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
 
 public class HistoricoPanel extends JPanel {
     private JTable table;
-    private DefaultTableModel tableModel;
+    private HistoricoTableModel tableModel;
     private Estoque estoque;
     private CadastroMedicamentos cadastro;
     private JFormattedTextField startDateField;
@@ -62,8 +62,7 @@ public class HistoricoPanel extends JPanel {
         searchPanel.add(searchButton);
         add(searchPanel, BorderLayout.NORTH);
 
-        tableModel = new DefaultTableModel();
-        tableModel.setColumnIdentifiers(new String[]{"ID", "Natureza", "Data", "ID Medicamento", "Medicamento", "Validade", "Local", "Quantidade"});
+        tableModel = new HistoricoTableModel(estoque, cadastro);
 
         table = new JTable(tableModel);
         JScrollPane scrollPane = new JScrollPane(table);
@@ -77,39 +76,15 @@ public class HistoricoPanel extends JPanel {
     }
 
     public void loadHistorico(String startDate, String endDate) {
-        List<Registro> registros = estoque.getEstoque();
-        tableModel.setRowCount(0); // Limpa a tabela
-
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
-        Date start = null, end = null;
-        try {
-            start = sdf.parse(startDate);
-            end = sdf.parse(endDate);
-        } catch (ParseException e) {
+        int start = Datas.paraDia(startDate);
+        int end = Datas.paraDia(endDate);
+        if (start == Datas.SEM_DATA || end == Datas.SEM_DATA) {
             JOptionPane.showMessageDialog(this, "Datas inválidas. Por favor, use o formato DD/MM/YYYY.", "Erro", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-        for (Registro reg : registros) {
-            try {
-                Date regDate = sdf.parse(reg.getEstData());
-                if ((regDate.equals(start) || regDate.after(start)) && (regDate.equals(end) || regDate.before(end))) {
-                    Medicamento med = cadastro.getMedicamento(reg.getMedId());
-                    tableModel.addRow(new Object[]{
-                            reg.getEstId(),
-                            reg.getEstNat(),
-                            reg.getEstData(),
-                            reg.getMedId(),
-                            med != null ? med.getMedNome() : "Desconhecido",
-                            reg.getEstValid(),
-                            reg.getEstLocal(),
-                            reg.getEstQnt()
-                    });
-                }
-            } catch (ParseException e) {
-                e.printStackTrace();
-            }
-        }
+        // Duas buscas binárias no índice por data; as células são montadas pela tabela conforme a rolagem
+        tableModel.setPeriodo(start, end);
     }
 
     private boolean isValidDate(String date) {
@@ -0,0 +1,89 @@
+package poofinal;
+
+import javax.swing.table.AbstractTableModel;
+
+// Modelo da tabela do histórico que guarda só os IDs dos registros do período, lidos de uma vez quando
+// o período é escolhido; os registros são buscados quando a tabela pede, ou seja, só para as linhas visíveis.
+// Registros que entram depois ficam para a próxima escolha do período; os removidos aparecem em branco.
+class HistoricoTableModel extends AbstractTableModel {
+    private static final String[] COLUNAS = {"ID", "Natureza", "Data", "ID Medicamento", "Medicamento", "Validade", "Local", "Quantidade"};
+
+    private final Estoque estoque;
+    private final CadastroMedicamentos cadastro;
+    private int[] ids = new int[0];
+    // A tabela pede as colunas de uma linha em seguida: o registro é buscado uma vez por linha
+    private int linhaAtual = -1;
+    private Registro registroAtual;
+
+    public HistoricoTableModel(Estoque estoque, CadastroMedicamentos cadastro) {
+        this.estoque = estoque;
+        this.cadastro = cadastro;
+    }
+
+    public void setPeriodo(int inicio, int termino) {
+        this.ids = estoque.getIdsPorPeriodo(inicio, termino);
+        this.linhaAtual = -1;
+        this.registroAtual = null;
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() {
+        return ids.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUNAS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUNAS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        switch (column) {
+            case 0:
+            case 3:
+            case 7:
+                return Integer.class;
+            default:
+                return String.class;
+        }
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (row != linhaAtual) {
+            registroAtual = estoque.getRegistroPorId(ids[row]);
+            linhaAtual = row;
+        }
+        Registro reg = registroAtual;
+        if (reg == null) {
+            return null;
+        }
+        switch (column) {
+            case 0:
+                return reg.getEstId();
+            case 1:
+                return reg.getEstNat();
+            case 2:
+                return reg.getEstData();
+            case 3:
+                return reg.getMedId();
+            case 4:
+                Medicamento med = cadastro.getMedicamento(reg.getMedId());
+                return med != null ? med.getMedNome() : "Desconhecido";
+            case 5:
+                return reg.getEstValid();
+            case 6:
+                return reg.getEstLocal();
+            case 7:
+                return reg.getEstQnt();
+            default:
+                return null;
+        }
+    }
+}
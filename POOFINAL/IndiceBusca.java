@@ -0,0 +1,223 @@
+package poofinal;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Índice de busca do cadastro: nome, princípios ativos e função de cada medicamento guardados já
+// normalizados (minúsculas, sem acentos) e, para cada trio de caracteres seguidos, a lista dos IDs
+// cujo campo contém o trio. Uma busca cruza as listas dos trios do texto procurado e confirma com
+// contains só os IDs que sobram. As listas ficam em ordem crescente porque os IDs são sequenciais.
+class IndiceBusca {
+    enum Campo {
+        NOME, PRINCIPIO_ATIVO, FUNCAO
+    }
+
+    private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+    private static final int CAMPOS = Campo.values().length;
+
+    // Chave: campo nos bits altos e os três caracteres nos 48 bits baixos (ver trio)
+    private final Map<Long, ListaInt> postagens;
+    // Textos normalizados por campo, na posição do ID
+    private final String[][] textos;
+    private int maiorId;
+
+    public IndiceBusca() {
+        this.postagens = new HashMap<>();
+        this.textos = new String[CAMPOS][64];
+        this.maiorId = 0;
+    }
+
+    // Minúsculas e sem acentos: "Dipirona Sódica" e "dipirona sodica" viram o mesmo texto
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        boolean ascii = true;
+        for (int i = 0; i < texto.length() && ascii; i++) {
+            ascii = texto.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            return texto.toLowerCase(Locale.ROOT);
+        }
+        String decomposto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+        return ACENTOS.matcher(decomposto).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    // Os IDs chegam em ordem crescente (ver CadastroMedicamentos.registrarMedicamento)
+    public synchronized void adicionar(Medicamento med) {
+        int id = med.getMedId();
+        if (id >= textos[0].length) {
+            for (int c = 0; c < CAMPOS; c++) {
+                textos[c] = Arrays.copyOf(textos[c], Math.max(id + 1, textos[c].length * 2));
+            }
+        }
+        maiorId = Math.max(maiorId, id);
+        indexar(Campo.NOME, id, med.getMedNome());
+        indexar(Campo.PRINCIPIO_ATIVO, id, med.getPrincAtvsAsString());
+        indexar(Campo.FUNCAO, id, med.getMedFunc());
+    }
+
+    public synchronized void limpar() {
+        postagens.clear();
+        for (String[] porCampo : textos) {
+            Arrays.fill(porCampo, null);
+        }
+        maiorId = 0;
+    }
+
+    private void indexar(Campo campo, int id, String texto) {
+        String normalizado = normalizar(texto);
+        textos[campo.ordinal()][id] = normalizado;
+        for (int i = 0; i + 3 <= normalizado.length(); i++) {
+            ListaInt ids = postagens.computeIfAbsent(trio(campo, normalizado, i), k -> new ListaInt());
+            // O mesmo trio pode aparecer mais de uma vez no texto
+            if (ids.ultimo() != id) {
+                ids.add(id);
+            }
+        }
+    }
+
+    // IDs dos medicamentos em que algum dos campos contém o texto, ignorando maiúsculas e acentos. Ordem:
+    // campo igual ao texto, campo começando pelo texto, palavra começando pelo texto e depois o resto; no
+    // empate, o campo que vem antes em Campo e o menor ID. Texto vazio devolve todos os IDs em ordem.
+    public synchronized ListaInt buscar(String texto, Campo... campos) {
+        String procurado = normalizar(texto);
+        if (procurado.isEmpty()) {
+            ListaInt todos = new ListaInt(maiorId);
+            for (int id = 1; id <= maiorId; id++) {
+                if (textos[0][id] != null) {
+                    todos.add(id);
+                }
+            }
+            return todos;
+        }
+
+        // ID nos 32 bits altos e chave de ordenação nos baixos, para ordenar um vetor de long só
+        long[] encontrados = new long[16];
+        int quantidade = 0;
+        for (Campo campo : campos) {
+            int[] candidatos = candidatos(campo, procurado);
+            String[] porId = textos[campo.ordinal()];
+            for (int i = 0; i < candidatos.length; i++) {
+                int id = candidatos[i];
+                String normalizado = porId[id];
+                int posicao = normalizado == null ? -1 : normalizado.indexOf(procurado);
+                if (posicao < 0) {
+                    continue;
+                }
+                int chave = classificar(normalizado, procurado, posicao) * CAMPOS + campo.ordinal();
+                if (quantidade == encontrados.length) {
+                    encontrados = Arrays.copyOf(encontrados, quantidade * 2);
+                }
+                encontrados[quantidade++] = ((long) id << 32) | chave;
+            }
+        }
+
+        // Com vários campos o mesmo ID pode ter sido encontrado mais de uma vez: fica a menor chave
+        if (campos.length > 1) {
+            Arrays.sort(encontrados, 0, quantidade);
+        }
+        int unicos = 0;
+        for (int i = 0; i < quantidade; i++) {
+            long id = encontrados[i] >>> 32;
+            if (unicos == 0 || (encontrados[unicos - 1] & 0xFFFFFFFFL) != id) {
+                encontrados[unicos++] = ((encontrados[i] & 0xFFFFFFFFL) << 32) | id;
+            }
+        }
+        quantidade = unicos;
+
+        Arrays.sort(encontrados, 0, quantidade);
+        ListaInt ids = new ListaInt(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            ids.add((int) encontrados[i]);
+        }
+        return ids;
+    }
+
+    // IDs que têm todos os trios do texto no campo, em ordem crescente. Textos com menos de três
+    // caracteres não têm trio: todos os IDs são candidatos e o contains decide.
+    private int[] candidatos(Campo campo, String procurado) {
+        if (procurado.length() < 3) {
+            int[] todos = new int[maiorId];
+            for (int id = 1; id <= maiorId; id++) {
+                todos[id - 1] = id;
+            }
+            return todos;
+        }
+        int quantidadeTrios = procurado.length() - 2;
+        ListaInt[] listas = new ListaInt[quantidadeTrios];
+        for (int i = 0; i < quantidadeTrios; i++) {
+            listas[i] = postagens.get(trio(campo, procurado, i));
+            if (listas[i] == null) {
+                return new int[0];
+            }
+        }
+        // A menor lista primeiro: o resultado nunca é maior que ela
+        Arrays.sort(listas, (a, b) -> Integer.compare(a.size(), b.size()));
+        int[] resultado = listas[0].paraArray();
+        int tamanho = resultado.length;
+        for (int l = 1; l < listas.length && tamanho > 0; l++) {
+            if (listas[l] == listas[l - 1]) {
+                continue;
+            }
+            int mantidos = 0;
+            int inicio = 0;
+            for (int i = 0; i < tamanho; i++) {
+                inicio = procurar(listas[l], resultado[i], inicio);
+                if (inicio < listas[l].size() && listas[l].get(inicio) == resultado[i]) {
+                    resultado[mantidos++] = resultado[i];
+                }
+            }
+            tamanho = mantidos;
+        }
+        return Arrays.copyOf(resultado, tamanho);
+    }
+
+    // Primeira posição a partir de inicio com valor >= id. Avança em saltos que dobram e termina com uma
+    // busca binária: os candidatos vêm em ordem, então o próximo costuma estar perto do anterior.
+    private static int procurar(ListaInt lista, int id, int inicio) {
+        int tamanho = lista.size();
+        int salto = 1;
+        int baixo = inicio;
+        while (baixo + salto < tamanho && lista.get(baixo + salto) < id) {
+            baixo += salto;
+            salto <<= 1;
+        }
+        int alto = Math.min(tamanho, baixo + salto + 1);
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (lista.get(meio) < id) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    // 0: igual, 1: começa pelo texto, 2: alguma palavra começa pelo texto, 3: no meio de uma palavra
+    private static int classificar(String normalizado, String procurado, int posicao) {
+        if (posicao == 0) {
+            return normalizado.length() == procurado.length() ? 0 : 1;
+        }
+        int atual = posicao;
+        while (atual >= 0) {
+            if (!Character.isLetterOrDigit(normalizado.charAt(atual - 1))) {
+                return 2;
+            }
+            atual = normalizado.indexOf(procurado, atual + 1);
+        }
+        return 3;
+    }
+
+    private static long trio(Campo campo, String texto, int inicio) {
+        return ((long) campo.ordinal() << 48)
+                | ((long) texto.charAt(inicio) << 32)
+                | ((long) texto.charAt(inicio + 1) << 16)
+                | texto.charAt(inicio + 2);
+    }
+}
@@ -0,0 +1,122 @@
+package poofinal;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Índice invertido dos princípios ativos do cadastro: de cada princípio para os medicamentos que o têm,
+// e da composição completa (princípios com as dosagens) para os medicamentos equivalentes. Nomes de
+// princípios são comparados normalizados (ver IndiceBusca.normalizar) e sem espaços sobrando; dosagens
+// em g, mg e mcg são convertidas para mg, de modo que 0,5 g e 500 mg são a mesma dosagem.
+class IndiceEquivalentes {
+    private final Map<String, ListaInt> porPrincipio;
+    private final Map<String, ListaInt> porComposicao;
+    // Composição de cada medicamento, na posição do ID
+    private String[] composicoes;
+
+    public IndiceEquivalentes() {
+        this.porPrincipio = new HashMap<>();
+        this.porComposicao = new HashMap<>();
+        this.composicoes = new String[64];
+    }
+
+    public synchronized void adicionar(Medicamento med) {
+        int id = med.getMedId();
+        if (id >= composicoes.length) {
+            composicoes = Arrays.copyOf(composicoes, Math.max(id + 1, composicoes.length * 2));
+        }
+        for (String principio : med.getMedPrincAtvs()) {
+            ListaInt ids = porPrincipio.computeIfAbsent(normalizarPrincipio(principio), k -> new ListaInt());
+            // O mesmo princípio repetido no medicamento entra uma vez só
+            if (ids.ultimo() != id) {
+                ids.add(id);
+            }
+        }
+        String composicao = composicao(med);
+        composicoes[id] = composicao;
+        porComposicao.computeIfAbsent(composicao, k -> new ListaInt()).add(id);
+    }
+
+    public synchronized void limpar() {
+        porPrincipio.clear();
+        porComposicao.clear();
+        Arrays.fill(composicoes, null);
+    }
+
+    // Medicamentos com os mesmos princípios nas mesmas dosagens, sem o próprio medId, em ordem de ID
+    public synchronized ListaInt getEquivalentes(int medId) {
+        ListaInt equivalentes = new ListaInt();
+        if (medId < 0 || medId >= composicoes.length || composicoes[medId] == null) {
+            return equivalentes;
+        }
+        ListaInt ids = porComposicao.get(composicoes[medId]);
+        for (int i = 0; i < ids.size(); i++) {
+            if (ids.get(i) != medId) {
+                equivalentes.add(ids.get(i));
+            }
+        }
+        return equivalentes;
+    }
+
+    // Medicamentos que têm o princípio ativo, sozinho ou associado a outros, em qualquer dosagem
+    public synchronized ListaInt getPorPrincipio(String principio) {
+        ListaInt ids = porPrincipio.get(normalizarPrincipio(principio));
+        return ids == null ? new ListaInt() : new ListaInt(ids.paraArray());
+    }
+
+    static String normalizarPrincipio(String principio) {
+        return IndiceBusca.normalizar(principio).trim().replaceAll("\\s+", " ");
+    }
+
+    // Texto que identifica a composição: pares princípio=dosagem em ordem alfabética. Quando o cadastro
+    // não traz uma dosagem por princípio, os princípios e as dosagens entram como duas listas separadas.
+    static String composicao(Medicamento med) {
+        List<String> principios = new ArrayList<>();
+        for (String principio : med.getMedPrincAtvs()) {
+            principios.add(normalizarPrincipio(principio));
+        }
+        String unidade = med.getMedUndDosag() == null ? "" : med.getMedUndDosag().trim().toLowerCase(Locale.ROOT);
+        List<String> dosagens = new ArrayList<>();
+        for (Double dosagem : med.getMedDosag()) {
+            dosagens.add(dosagem(dosagem, unidade));
+        }
+
+        List<String> partes = new ArrayList<>();
+        if (principios.size() == dosagens.size()) {
+            for (int i = 0; i < principios.size(); i++) {
+                partes.add(principios.get(i) + "=" + dosagens.get(i));
+            }
+            partes.sort(null);
+            return String.join(";", partes);
+        }
+        principios.sort(null);
+        dosagens.sort(null);
+        return String.join(";", principios) + "|" + String.join(";", dosagens);
+    }
+
+    private static String dosagem(double valor, String unidade) {
+        double fator;
+        switch (unidade) {
+            case "g":
+                fator = 1000;
+                break;
+            case "mcg":
+            case "µg":
+                fator = 0.001;
+                break;
+            case "mg":
+                fator = 1;
+                break;
+            default:
+                // Outras unidades (UI, ml, %) só se comparam com a mesma unidade
+                return BigDecimal.valueOf(valor).stripTrailingZeros().toPlainString() + unidade;
+        }
+        // Arredondado para que 0.15 g e 150 mg não difiram por erro de ponto flutuante
+        double emMg = Math.round(valor * fator * 1e6) / 1e6;
+        return BigDecimal.valueOf(emMg).stripTrailingZeros().toPlainString() + "mg";
+    }
+}
@@ -0,0 +1,86 @@
+package poofinal;
+
+import java.util.Arrays;
+
+// Linhas do histórico ordenadas por data, com empates na ordem de inclusão (linha crescente).
+// Um período [inicio, fim] corresponde às posições de posicao(inicio) até posicao(fim + 1) - 1.
+class IndicePorData {
+    private final Historico historico;
+    private ListaInt linhas;
+
+    public IndicePorData(Historico historico) {
+        this.historico = historico;
+        this.linhas = new ListaInt(1024);
+    }
+
+    // Primeira posição com movimento no dia informado ou depois dele
+    public int posicao(int dia) {
+        int baixo = 0;
+        int alto = linhas.size();
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (historico.getDiaData(linhas.get(meio)) < dia) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    public int get(int posicao) {
+        return linhas.get(posicao);
+    }
+
+    public int tamanho() {
+        return linhas.size();
+    }
+
+    // A linha nova é a maior até agora, então entra depois das outras do mesmo dia
+    public void inserir(int linha) {
+        linhas.add(posicao(historico.getDiaData(linha) + 1), linha);
+    }
+
+    // A posição sai por busca binária, mas a lista desloca as posições seguintes (ver ListaInt.removerPosicao):
+    // remover custa O(n) no tamanho do índice
+    public void remover(int linha) {
+        int dia = historico.getDiaData(linha);
+        for (int p = posicao(dia); p < linhas.size() && historico.getDiaData(linhas.get(p)) == dia; p++) {
+            if (linhas.get(p) == linha) {
+                linhas.removerPosicao(p);
+                return;
+            }
+        }
+    }
+
+    // Reordena todas as linhas não removidas de uma vez, depois de uma carga
+    public void reconstruir() {
+        int quantidade = historico.getQuantidadeLinhas();
+        long[] chaves = new long[quantidade];
+        int n = 0;
+        for (int linha = 0; linha < quantidade; linha++) {
+            if (!historico.isRemovida(linha)) {
+                chaves[n++] = ((long) historico.getDiaData(linha) << 32) | linha;
+            }
+        }
+        Arrays.sort(chaves, 0, n);
+
+        linhas = new ListaInt(Math.max(1024, n));
+        for (int i = 0; i < n; i++) {
+            linhas.add((int) chaves[i]);
+        }
+    }
+
+    // Linhas já na ordem do índice, lidas de um snapshot
+    public void definir(int[] ordenadas) {
+        linhas = new ListaInt(ordenadas);
+    }
+
+    public int[] paraArray() {
+        return linhas.paraArray();
+    }
+
+    public void limpar() {
+        linhas = new ListaInt(1024);
+    }
+}
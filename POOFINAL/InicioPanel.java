@@ -1,6 +1,7 @@
+package poofinal;
+
 import javax.swing.*;
 import java.awt.*;
-import java.util.List;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -64,11 +65,15 @@ public class InicioPanel extends JPanel {
 
         add(mostrarVencidosButton, BorderLayout.SOUTH);
 
-        atualizarAvisos(estoque);
+        // O aviso só aparece depois que a verificação de vencidos terminar em segundo plano
+        mostrarVencidosButton.setVisible(false);
     }
 
     public void atualizarAvisos(Estoque estoque) {
-        List<Registro> registrosVencidos = estoque.verificarValidade();
-        mostrarVencidosButton.setVisible(!registrosVencidos.isEmpty());
+        mostrarAvisoVencidos(estoque.existemVencidos());
+    }
+
+    public void mostrarAvisoVencidos(boolean existemVencidos) {
+        mostrarVencidosButton.setVisible(existemVencidos);
     }
 }
@@ -0,0 +1,241 @@
+package poofinal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// JSON só do tamanho que o ServidorEstoque precisa: escreve mapas, listas, textos e números, e lê
+// um objeto ou uma lista de objetos com valores simples (texto, número, booleano ou null).
+final class Json {
+    private final String texto;
+    private int posicao;
+
+    private Json(String texto) {
+        this.texto = texto;
+    }
+
+    public static String escrever(Object valor) {
+        StringBuilder saida = new StringBuilder();
+        escrever(saida, valor);
+        return saida.toString();
+    }
+
+    public static void escrever(StringBuilder saida, Object valor) {
+        if (valor == null) {
+            saida.append("null");
+        } else if (valor instanceof String texto) {
+            escreverTexto(saida, texto);
+        } else if (valor instanceof Number || valor instanceof Boolean) {
+            saida.append(valor);
+        } else if (valor instanceof Map<?, ?> mapa) {
+            saida.append('{');
+            boolean primeiro = true;
+            for (Map.Entry<?, ?> entrada : mapa.entrySet()) {
+                if (!primeiro) {
+                    saida.append(',');
+                }
+                primeiro = false;
+                escreverTexto(saida, String.valueOf(entrada.getKey()));
+                saida.append(':');
+                escrever(saida, entrada.getValue());
+            }
+            saida.append('}');
+        } else if (valor instanceof Collection<?> lista) {
+            saida.append('[');
+            boolean primeiro = true;
+            for (Object item : lista) {
+                if (!primeiro) {
+                    saida.append(',');
+                }
+                primeiro = false;
+                escrever(saida, item);
+            }
+            saida.append(']');
+        } else {
+            escreverTexto(saida, valor.toString());
+        }
+    }
+
+    private static void escreverTexto(StringBuilder saida, String texto) {
+        saida.append('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '"' -> saida.append("\\\"");
+                case '\\' -> saida.append("\\\\");
+                case '\n' -> saida.append("\\n");
+                case '\r' -> saida.append("\\r");
+                case '\t' -> saida.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        saida.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        saida.append(c);
+                    }
+                }
+            }
+        }
+        saida.append('"');
+    }
+
+    // Um objeto sozinho volta como lista de um elemento. Lança IllegalArgumentException se o texto não for
+    // um objeto ou uma lista de objetos, ou se algum valor for um objeto ou uma lista.
+    public static List<Map<String, Object>> lerObjetos(String texto) {
+        Json leitor = new Json(texto);
+        List<Map<String, Object>> objetos = new ArrayList<>();
+        leitor.pularEspacos();
+        if (leitor.proximo() == '[') {
+            leitor.posicao++;
+            leitor.pularEspacos();
+            if (leitor.proximo() == ']') {
+                leitor.posicao++;
+            } else {
+                do {
+                    objetos.add(leitor.lerObjeto());
+                } while (leitor.separador(']'));
+            }
+        } else {
+            objetos.add(leitor.lerObjeto());
+        }
+        leitor.pularEspacos();
+        if (leitor.posicao < texto.length()) {
+            throw leitor.erro("conteúdo depois do fim");
+        }
+        return objetos;
+    }
+
+    private Map<String, Object> lerObjeto() {
+        pularEspacos();
+        esperar('{');
+        Map<String, Object> objeto = new LinkedHashMap<>();
+        pularEspacos();
+        if (proximo() == '}') {
+            posicao++;
+            return objeto;
+        }
+        do {
+            pularEspacos();
+            String chave = lerTexto();
+            pularEspacos();
+            esperar(':');
+            pularEspacos();
+            objeto.put(chave, lerValor());
+        } while (separador('}'));
+        return objeto;
+    }
+
+    // Consome ',' (devolve true) ou o fechamento (devolve false)
+    private boolean separador(char fechamento) {
+        pularEspacos();
+        char c = proximo();
+        posicao++;
+        if (c == ',') {
+            return true;
+        }
+        if (c != fechamento) {
+            posicao--;
+            throw erro("esperado ',' ou '" + fechamento + "'");
+        }
+        return false;
+    }
+
+    private Object lerValor() {
+        char c = proximo();
+        if (c == '"') {
+            return lerTexto();
+        }
+        if (texto.startsWith("true", posicao)) {
+            posicao += 4;
+            return Boolean.TRUE;
+        }
+        if (texto.startsWith("false", posicao)) {
+            posicao += 5;
+            return Boolean.FALSE;
+        }
+        if (texto.startsWith("null", posicao)) {
+            posicao += 4;
+            return null;
+        }
+        int inicio = posicao;
+        while (posicao < texto.length() && "+-0123456789.eE".indexOf(texto.charAt(posicao)) >= 0) {
+            posicao++;
+        }
+        if (inicio == posicao) {
+            throw erro("valor inválido");
+        }
+        String numero = texto.substring(inicio, posicao);
+        try {
+            if (numero.indexOf('.') < 0 && numero.indexOf('e') < 0 && numero.indexOf('E') < 0) {
+                return Long.parseLong(numero);
+            }
+            return Double.parseDouble(numero);
+        } catch (NumberFormatException e) {
+            throw erro("número inválido");
+        }
+    }
+
+    private String lerTexto() {
+        esperar('"');
+        StringBuilder saida = new StringBuilder();
+        while (true) {
+            if (posicao >= texto.length()) {
+                throw erro("texto sem fim");
+            }
+            char c = texto.charAt(posicao++);
+            if (c == '"') {
+                return saida.toString();
+            }
+            if (c != '\\') {
+                saida.append(c);
+                continue;
+            }
+            if (posicao >= texto.length()) {
+                throw erro("texto sem fim");
+            }
+            char escape = texto.charAt(posicao++);
+            switch (escape) {
+                case '"', '\\', '/' -> saida.append(escape);
+                case 'b' -> saida.append('\b');
+                case 'f' -> saida.append('\f');
+                case 'n' -> saida.append('\n');
+                case 'r' -> saida.append('\r');
+                case 't' -> saida.append('\t');
+                case 'u' -> {
+                    if (posicao + 4 > texto.length()) {
+                        throw erro("escape inválido");
+                    }
+                    try {
+                        saida.append((char) Integer.parseInt(texto.substring(posicao, posicao + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw erro("escape inválido");
+                    }
+                    posicao += 4;
+                }
+                default -> throw erro("escape inválido");
+            }
+        }
+    }
+
+    private void esperar(char c) {
+        if (proximo() != c) {
+            throw erro("esperado '" + c + "'");
+        }
+        posicao++;
+    }
+
+    private char proximo() {
+        return posicao < texto.length() ? texto.charAt(posicao) : '\0';
+    }
+
+    private void pularEspacos() {
+        while (posicao < texto.length() && Character.isWhitespace(texto.charAt(posicao))) {
+            posicao++;
+        }
+    }
+
+    private IllegalArgumentException erro(String mensagem) {
+        return new IllegalArgumentException("JSON inválido na posição " + posicao + ": " + mensagem);
+    }
+}
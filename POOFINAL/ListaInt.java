@@ -0,0 +1,97 @@
+package poofinal;
+
+import java.util.Arrays;
+
+// Lista de int sem boxing, usada pelos índices que guardam linhas do histórico
+class ListaInt {
+    private int[] valores;
+    private int tamanho;
+
+    public ListaInt() {
+        this(4);
+    }
+
+    public ListaInt(int capacidade) {
+        this.valores = new int[Math.max(1, capacidade)];
+        this.tamanho = 0;
+    }
+
+    // Usa o vetor informado, sem cópia
+    public ListaInt(int[] valores) {
+        this.valores = valores.length == 0 ? new int[1] : valores;
+        this.tamanho = valores.length;
+    }
+
+    public int size() {
+        return tamanho;
+    }
+
+    public boolean isEmpty() {
+        return tamanho == 0;
+    }
+
+    public int get(int posicao) {
+        if (posicao >= tamanho) {
+            throw new IndexOutOfBoundsException(posicao);
+        }
+        return valores[posicao];
+    }
+
+    public void set(int posicao, int valor) {
+        if (posicao >= tamanho) {
+            throw new IndexOutOfBoundsException(posicao);
+        }
+        valores[posicao] = valor;
+    }
+
+    public void add(int valor) {
+        if (tamanho == valores.length) {
+            valores = Arrays.copyOf(valores, tamanho * 2);
+        }
+        valores[tamanho++] = valor;
+    }
+
+    // Desloca os valores seguintes: custa O(n) fora do fim da lista
+    public void add(int posicao, int valor) {
+        if (posicao > tamanho) {
+            throw new IndexOutOfBoundsException(posicao);
+        }
+        if (tamanho == valores.length) {
+            valores = Arrays.copyOf(valores, tamanho * 2);
+        }
+        System.arraycopy(valores, posicao, valores, posicao + 1, tamanho - posicao);
+        valores[posicao] = valor;
+        tamanho++;
+    }
+
+    // Também desloca os valores seguintes, O(n)
+    public void removerPosicao(int posicao) {
+        if (posicao >= tamanho) {
+            throw new IndexOutOfBoundsException(posicao);
+        }
+        System.arraycopy(valores, posicao + 1, valores, posicao, tamanho - posicao - 1);
+        tamanho--;
+    }
+
+    public boolean remover(int valor) {
+        for (int i = tamanho - 1; i >= 0; i--) {
+            if (valores[i] == valor) {
+                removerPosicao(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int ultimo() {
+        return tamanho == 0 ? -1 : valores[tamanho - 1];
+    }
+
+    public int[] paraArray() {
+        return Arrays.copyOf(valores, tamanho);
+    }
+
+    public void limpar() {
+        tamanho = 0;
+    }
+}
@@ -1,14 +1,17 @@
+package poofinal;
+
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class ListaPanel extends JPanel {
     private JTable table;
     private DefaultTableModel tableModel;
+    private ConsultaTabela consulta;
     private CadastroMedicamentos cadastro;
     private JTextField searchField;
     private JComboBox<String> searchCriteriaComboBox;
@@ -32,6 +35,7 @@ public class ListaPanel extends JPanel {
 
         tableModel = new DefaultTableModel();
         tableModel.setColumnIdentifiers(new String[]{"ID", "Nome", "Princípios Ativos", "Refrigerado", "Função", "Risco", "Dosagens", "Unidade", "Quant. Doses", "Marca", "Envase"});
+        consulta = new ConsultaTabela(tableModel);
 
         table = new JTable(tableModel);
         JScrollPane scrollPane = new JScrollPane(table);
@@ -61,64 +65,60 @@ public class ListaPanel extends JPanel {
     }
 
     public void loadMedicamentos() {
-        tableModel.setRowCount(0);
-        List<Medicamento> medicamentos = cadastro.getMedicamentos();
-        for (Medicamento med : medicamentos) {
-            tableModel.addRow(new Object[]{
-                    med.getMedId(),
-                    med.getMedNome(),
-                    med.getPrincAtvsAsString(),
-                    med.isMedRefri() ? "Sim" : "Não",
-                    med.getMedFunc(),
-                    med.getMedRisco(),
-                    med.getDosagensAsString(),
-                    med.getMedUndDosag(),
-                    med.getMedQntDoses(),
-                    med.getMedMarca(),
-                    med.getMedEnvase()
-            });
-        }
+        // Copiada aqui, na thread da interface: o cadastro só muda nela, e a consulta percorre a cópia
+        // em segundo plano sem correr o risco de um cadastro novo no meio da iteração
+        List<Medicamento> medicamentos = new ArrayList<>(cadastro.getMedicamentos());
+        consulta.executar(linhas -> {
+            for (Medicamento med : medicamentos) {
+                linhas.accept(paraLinha(med));
+            }
+        });
     }
 
+    // Resultados do mais para o menos relevante, sem diferenciar maiúsculas e acentos (ver IndiceBusca)
     private void searchMedicamentos() {
-        String searchText = searchField.getText().toLowerCase();
+        String searchText = searchField.getText();
         String searchCriteria = searchCriteriaComboBox.getSelectedItem().toString().toLowerCase();
 
-        List<Medicamento> medicamentos = cadastro.getMedicamentos();
-        List<Medicamento> filteredMedicamentos = medicamentos.stream()
-                .filter(med -> {
-                    switch (searchCriteria) {
-                        case "nome":
-                            return med.getMedNome().toLowerCase().contains(searchText);
-                        case "princípio ativo":
-                            return med.getPrincAtvsAsString().toLowerCase().contains(searchText);
-                        case "função":
-                            return med.getMedFunc().toLowerCase().contains(searchText);
-                        case "todos":
-                            return med.getMedNome().toLowerCase().contains(searchText) ||
-                                    med.getPrincAtvsAsString().toLowerCase().contains(searchText) ||
-                                    med.getMedFunc().toLowerCase().contains(searchText);
-                        default:
-                            return false;
-                    }
-                })
-                .collect(Collectors.toList());
-
-        tableModel.setRowCount(0);
-        for (Medicamento med : filteredMedicamentos) {
-            tableModel.addRow(new Object[]{
-                    med.getMedId(),
-                    med.getMedNome(),
-                    med.getPrincAtvsAsString(),
-                    med.isMedRefri() ? "Sim" : "Não",
-                    med.getMedFunc(),
-                    med.getMedRisco(),
-                    med.getDosagensAsString(),
-                    med.getMedUndDosag(),
-                    med.getMedQntDoses(),
-                    med.getMedMarca(),
-                    med.getMedEnvase()
-            });
+        IndiceBusca.Campo[] campos;
+        switch (searchCriteria) {
+            case "nome":
+                campos = new IndiceBusca.Campo[]{IndiceBusca.Campo.NOME};
+                break;
+            case "princípio ativo":
+                campos = new IndiceBusca.Campo[]{IndiceBusca.Campo.PRINCIPIO_ATIVO};
+                break;
+            case "função":
+                campos = new IndiceBusca.Campo[]{IndiceBusca.Campo.FUNCAO};
+                break;
+            case "todos":
+                campos = IndiceBusca.Campo.values();
+                break;
+            default:
+                return;
         }
+
+        consulta.executar(linhas -> {
+            ListaInt ids = cadastro.buscar(searchText, campos);
+            for (int i = 0; i < ids.size(); i++) {
+                linhas.accept(paraLinha(cadastro.getMedicamento(ids.get(i))));
+            }
+        });
+    }
+
+    private Object[] paraLinha(Medicamento med) {
+        return new Object[]{
+                med.getMedId(),
+                med.getMedNome(),
+                med.getPrincAtvsAsString(),
+                med.isMedRefri() ? "Sim" : "Não",
+                med.getMedFunc(),
+                med.getMedRisco(),
+                med.getDosagensAsString(),
+                med.getMedUndDosag(),
+                med.getMedQntDoses(),
+                med.getMedMarca(),
+                med.getMedEnvase()
+        };
     }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package poofinal;
+
+import java.util.Objects;
+
+// Posição de um medicamento em um local com a validade vigente, ordenada por validade (FEFO)
+class Lote implements Comparable<Lote> {
+    private int medId;
+    private String local;
+    private String validade;
+    private int diaValid;
+
+    public Lote(int medId, String local, String validade) {
+        this.medId = medId;
+        this.local = local;
+        this.validade = validade;
+        this.diaValid = Datas.paraDia(validade);
+    }
+
+    public int getMedId() {
+        return medId;
+    }
+
+    public String getLocal() {
+        return local;
+    }
+
+    public String getValidade() {
+        return validade;
+    }
+
+    public int getDiaValid() {
+        return diaValid;
+    }
+
+    @Override
+    public int compareTo(Lote outro) {
+        int cmp = Integer.compare(diaValid, outro.diaValid);
+        if (cmp != 0) {
+            return cmp;
+        }
+        cmp = local.compareTo(outro.local);
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Integer.compare(medId, outro.medId);
+    }
+
+    // A mesma chave de compareTo: o TreeSet e os mapas por hash precisam ver os mesmos lotes como iguais,
+    // mesmo que a validade tenha sido escrita de outro jeito (01/02/2025 e 1/2/2025)
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Lote)) {
+            return false;
+        }
+        Lote outro = (Lote) o;
+        return diaValid == outro.diaValid && local.equals(outro.local) && medId == outro.medId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(diaValid, local, medId);
+    }
+}
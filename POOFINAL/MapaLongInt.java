@@ -0,0 +1,116 @@
+package poofinal;
+
+// Mapa de long para int com endereçamento aberto, sem boxing, usado nos resultados parciais do
+// recálculo de saldos. Percorrido por posição: de 0 até capacidade() - 1, pulando as vazias.
+class MapaLongInt {
+    private long[] chaves;
+    private int[] valores;
+    private boolean[] ocupadas;
+    private int tamanho;
+
+    public MapaLongInt() {
+        this(16);
+    }
+
+    public MapaLongInt(int capacidadeInicial) {
+        int capacidade = Integer.highestOneBit(Math.max(16, capacidadeInicial - 1) << 1);
+        this.chaves = new long[capacidade];
+        this.valores = new int[capacidade];
+        this.ocupadas = new boolean[capacidade];
+        this.tamanho = 0;
+    }
+
+    public int size() {
+        return tamanho;
+    }
+
+    public int capacidade() {
+        return chaves.length;
+    }
+
+    public boolean ocupada(int posicao) {
+        return ocupadas[posicao];
+    }
+
+    public long chave(int posicao) {
+        return chaves[posicao];
+    }
+
+    public int valor(int posicao) {
+        return valores[posicao];
+    }
+
+    public int get(long chave, int padrao) {
+        int posicao = procurar(chave);
+        return ocupadas[posicao] ? valores[posicao] : padrao;
+    }
+
+    public void put(long chave, int valor) {
+        int posicao = procurar(chave);
+        if (!ocupadas[posicao]) {
+            ocupar(posicao, chave);
+            posicao = procurar(chave);
+        }
+        valores[posicao] = valor;
+    }
+
+    // A chave passa a existir mesmo quando a soma dá zero, como no merge dos mapas do Estoque
+    public void somar(long chave, int valor) {
+        int posicao = procurar(chave);
+        if (!ocupadas[posicao]) {
+            ocupar(posicao, chave);
+            posicao = procurar(chave);
+        }
+        valores[posicao] += valor;
+    }
+
+    public void somarTudo(MapaLongInt outro) {
+        for (int i = 0; i < outro.chaves.length; i++) {
+            if (outro.ocupadas[i]) {
+                somar(outro.chaves[i], outro.valores[i]);
+            }
+        }
+    }
+
+    private int procurar(long chave) {
+        int mascara = chaves.length - 1;
+        int posicao = espalhar(chave) & mascara;
+        while (ocupadas[posicao] && chaves[posicao] != chave) {
+            posicao = (posicao + 1) & mascara;
+        }
+        return posicao;
+    }
+
+    private void ocupar(int posicao, long chave) {
+        chaves[posicao] = chave;
+        valores[posicao] = 0;
+        ocupadas[posicao] = true;
+        tamanho++;
+        // Ocupação máxima de 50%
+        if (tamanho * 2 > chaves.length) {
+            crescer();
+        }
+    }
+
+    private void crescer() {
+        long[] chavesAntigas = chaves;
+        int[] valoresAntigos = valores;
+        boolean[] ocupadasAntigas = ocupadas;
+        chaves = new long[chavesAntigas.length * 2];
+        valores = new int[chavesAntigas.length * 2];
+        ocupadas = new boolean[chavesAntigas.length * 2];
+        for (int i = 0; i < chavesAntigas.length; i++) {
+            if (ocupadasAntigas[i]) {
+                int posicao = procurar(chavesAntigas[i]);
+                chaves[posicao] = chavesAntigas[i];
+                valores[posicao] = valoresAntigos[i];
+                ocupadas[posicao] = true;
+            }
+        }
+    }
+
+    private static int espalhar(long chave) {
+        long h = chave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -1,10 +1,15 @@
+package poofinal;
+
 import javax.swing.*;
 import java.awt.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class MedicamentoGUI extends JFrame {
     private JPanel mainPanel;
     private CardLayout cardLayout;
+    private JLabel statusLabel;
 
     public MedicamentoGUI(CadastroMedicamentos cadastro, Estoque estoque) {
         setTitle("Cadastro de Medicamentos e Estoque");
@@ -12,6 +17,66 @@ public class MedicamentoGUI extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
 
+        // A janela aparece logo, mas nenhuma tela pode ser usada durante a carga: os painéis só são montados
+        // depois que os dois arquivos forem lidos, porque consultam o cadastro e o estoque ao serem criados
+        add(criarCarregamentoPanel());
+        setVisible(true);
+
+        carregarDados(cadastro, estoque);
+    }
+
+    private JPanel criarCarregamentoPanel() {
+        JPanel carregamentoPanel = new JPanel(new GridBagLayout());
+
+        JPanel conteudoPanel = new JPanel(new BorderLayout(0, 10));
+        statusLabel = new JLabel("Carregando dados...", SwingConstants.CENTER);
+        statusLabel.setFont(new Font("Arial", Font.BOLD, 18));
+        JProgressBar progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        JLabel avisoLabel = new JLabel("O sistema fica disponível quando a carga terminar.", SwingConstants.CENTER);
+
+        conteudoPanel.add(statusLabel, BorderLayout.NORTH);
+        conteudoPanel.add(progressBar, BorderLayout.CENTER);
+        conteudoPanel.add(avisoLabel, BorderLayout.SOUTH);
+        carregamentoPanel.add(conteudoPanel);
+        return carregamentoPanel;
+    }
+
+    private void carregarDados(CadastroMedicamentos cadastro, Estoque estoque) {
+        SwingWorker<Void, String> carregamento = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                // Cadastro e histórico não dependem um do outro, então são lidos em paralelo; a mensagem
+                // mostra o que ainda falta, o cadastro primeiro
+                CompletableFuture<Void> leituraCadastro = CompletableFuture.runAsync(cadastro::carregar);
+                CompletableFuture<Void> leituraEstoque = CompletableFuture.runAsync(estoque::carregar);
+                publish("Carregando cadastro de medicamentos...");
+                leituraCadastro.join();
+                publish("Carregando histórico de estoque...");
+                leituraEstoque.join();
+                return null;
+            }
+
+            @Override
+            protected void process(List<String> mensagens) {
+                statusLabel.setText(mensagens.get(mensagens.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+                InicioPanel inicioPanel = montarPaineis(cadastro, estoque);
+                verificarMedicamentosVencidos(estoque, inicioPanel);
+            }
+        };
+        carregamento.execute();
+    }
+
+    private InicioPanel montarPaineis(CadastroMedicamentos cadastro, Estoque estoque) {
         cardLayout = new CardLayout();
         mainPanel = new JPanel(cardLayout);
 
@@ -35,33 +100,43 @@ public class MedicamentoGUI extends JFrame {
         mainPanel.add(filtroMedicamentoPanel, "filtroMedicamento");
         mainPanel.add(relatorioBuscaPanel, "relatorioBusca");
 
+        getContentPane().removeAll();
         add(mainPanel);
         cardLayout.show(mainPanel, "inicio");
-
-        setVisible(true);
-        verificarMedicamentosVencidos(estoque);
+        revalidate();
+        repaint();
+        return inicioPanel;
     }
 
-    private void verificarMedicamentosVencidos(Estoque estoque) {
-        try {
-            Thread.sleep(500);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-
-        List<Registro> registrosVencidos = estoque.verificarValidade();
-        if (!registrosVencidos.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Existem medicamentos vencidos no estoque.", "Atenção", JOptionPane.WARNING_MESSAGE);
-        }
+    private void verificarMedicamentosVencidos(Estoque estoque, InicioPanel inicioPanel) {
+        SwingWorker<Boolean, Void> verificacao = new SwingWorker<>() {
+            @Override
+            protected Boolean doInBackground() {
+                return estoque.existemVencidos();
+            }
+
+            @Override
+            protected void done() {
+                boolean existemVencidos;
+                try {
+                    existemVencidos = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                inicioPanel.mostrarAvisoVencidos(existemVencidos);
+                if (existemVencidos) {
+                    JOptionPane.showMessageDialog(MedicamentoGUI.this, "Existem medicamentos vencidos no estoque.", "Atenção", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        };
+        verificacao.execute();
     }
 
     public static void main(String[] args) {
         CadastroMedicamentos cadastro = new CadastroMedicamentos();
-        cadastro.uploadCSV("src/med_cadastro.csv");
-
         Estoque estoque = new Estoque(cadastro);
-        estoque.uploadCSV("src/hist_estoque.csv");
 
-        new MedicamentoGUI(cadastro, estoque);
+        SwingUtilities.invokeLater(() -> new MedicamentoGUI(cadastro, estoque));
     }
 }
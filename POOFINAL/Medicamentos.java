@@ -1,11 +1,18 @@
+package poofinal;
+
 import com.opencsv.CSVReader;
 import com.opencsv.CSVWriter;
 import com.opencsv.exceptions.CsvException;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 class Medicamento {
@@ -39,6 +46,21 @@ class Medicamento {
         this.medEnvase = medEnvase;
     }
 
+    // Medicamento com os campos já separados, lido de um snapshot
+    Medicamento(String medNome, List<String> medPrincAtvs, boolean medRefri, String medFunc, String medRisco,
+                List<Double> medDosag, String medUndDosag, int medQntDoses, String medMarca, String medEnvase) {
+        this.medNome = medNome;
+        this.medPrincAtvs = List.copyOf(medPrincAtvs);
+        this.medRefri = medRefri;
+        this.medFunc = medFunc;
+        this.medRisco = medRisco;
+        this.medDosag = new ArrayList<>(medDosag);
+        this.medUndDosag = medUndDosag;
+        this.medQntDoses = medQntDoses;
+        this.medMarca = medMarca;
+        this.medEnvase = medEnvase;
+    }
+
     // Getters and Setters
 
     public int getMedId() {
@@ -90,7 +112,7 @@ class Medicamento {
     }
 
     public String getPrincAtvsAsString() {
-        return String.join("; ", medPrincAtvs)
+        return String.join("; ", medPrincAtvs);
     }
 
     public String getDosagensAsString() {
@@ -108,75 +130,292 @@ class Medicamento {
 
 
 class CadastroMedicamentos {
+    private static final String MED_CSV = "src/med_cadastro.csv";
+    private static final String[] CABECALHO = {"ID", "Nome", "Princípios Ativos", "Refrigerado", "Função", "Risco", "Dosagens", "Unidade", "Quantidade de Doses", "Marca", "Envase"};
+
     private List<Medicamento> medicamentos;
+    private Medicamento[] medicamentosPorId; // IDs são sequenciais, então o ID é a posição no vetor
     private int lastMedId;
+    private DiarioCSV diario;
+    private String caminhoSnapshot;
+    private IndiceBusca indice;
+    private IndiceEquivalentes equivalentes;
 
     public CadastroMedicamentos() {
+        this(MED_CSV);
+    }
+
+    public CadastroMedicamentos(String caminhoCadastro) {
         this.medicamentos = new ArrayList<>();
+        this.medicamentosPorId = new Medicamento[64];
         this.lastMedId = 0;
+        this.diario = new DiarioCSV(caminhoCadastro, CABECALHO);
+        this.caminhoSnapshot = caminhoCadastro.replaceFirst("\\.csv$", "") + ".snap";
+        this.indice = new IndiceBusca();
+        this.equivalentes = new IndiceEquivalentes();
     }
 
+    // Só entra no cadastro depois de gravado no diário; se a gravação falhar o cadastro não muda
     public void adicionarMedicamento(Medicamento medicamento) {
-        this.lastMedId++;
-        medicamento.setMedId(this.lastMedId);
+        medicamento.setMedId(this.lastMedId + 1);
+        try {
+            diario.anexar(paraLinha(medicamento));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        registrarMedicamento(medicamento, this.lastMedId + 1);
+    }
+
+    // Os IDs só crescem: o IndiceBusca e o histórico contam com a ordem do cadastro
+    private void registrarMedicamento(Medicamento medicamento, int id) {
+        if (id <= lastMedId) {
+            throw new IllegalStateException("ID de medicamento fora de ordem: " + id);
+        }
+        this.lastMedId = id;
+        medicamento.setMedId(id);
         this.medicamentos.add(medicamento);
-        saveCSV("src/med_cadastro.csv");
+        if (lastMedId >= medicamentosPorId.length) {
+            medicamentosPorId = Arrays.copyOf(medicamentosPorId, Math.max(lastMedId + 1, medicamentosPorId.length * 2));
+        }
+        medicamentosPorId[lastMedId] = medicamento;
+        indice.adicionar(medicamento);
+        equivalentes.adicionar(medicamento);
     }
 
-    public Medicamento getMedicamento(int id) {
+    public void setPoliticaSync(DiarioCSV.PoliticaSync politica, int tamanhoGrupo, long intervaloMs) {
+        diario.setPolitica(politica, tamanhoGrupo, intervaloMs);
+    }
+
+    // Reescreve o cadastro completo, descartando o que foi apenas anexado
+    public void compactar() {
+        List<String[]> linhas = new ArrayList<>(medicamentos.size());
         for (Medicamento med : medicamentos) {
-            if (med.getMedId() == id) {
-                return med;
-            }
+            linhas.add(paraLinha(med));
+        }
+        diario.reescrever(linhas);
+        salvarSnapshot(caminhoSnapshot);
+    }
+
+    public Medicamento getMedicamento(int id) {
+        if (id < 0 || id >= medicamentosPorId.length) {
+            return null;
         }
-        return null;
+        return medicamentosPorId[id];
     }
 
     public List<Medicamento> getMedicamentos() {
         return medicamentos;
     }
 
+    // IDs dos medicamentos cujos campos contêm o texto, do mais para o menos relevante (ver IndiceBusca.buscar)
+    public ListaInt buscar(String texto, IndiceBusca.Campo... campos) {
+        return indice.buscar(texto, campos);
+    }
+
+    // Medicamentos com os mesmos princípios ativos nas mesmas dosagens (ver IndiceEquivalentes)
+    public ListaInt getEquivalentes(int medId) {
+        return equivalentes.getEquivalentes(medId);
+    }
+
+    public ListaInt getPorPrincipioAtivo(String principio) {
+        return equivalentes.getPorPrincipio(principio);
+    }
+
     public void uploadCSV(String filePath) {
         try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
-            List<String[]> rows = reader.readAll();
             medicamentos.clear();
+            Arrays.fill(medicamentosPorId, null);
             lastMedId = 0;
+            indice.limpar();
+            equivalentes.limpar();
 
-            for (String[] row : rows) {
-                if (rows.indexOf(row) == 0) continue; // Skip header row
-                Medicamento med = new Medicamento(row[1], row[2], Boolean.parseBoolean(row[3]), row[4],
+            reader.skip(1); // Skip header row
+            lerMedicamentos(reader);
+        } catch (IOException | CsvException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private int lerMedicamentos(CSVReader reader) throws IOException, CsvException {
+        int lidas = 0;
+        int ignorados = 0;
+        String[] row;
+        while ((row = DiarioCSV.lerLinha(reader)) != null) {
+            Medicamento med;
+            try {
+                med = new Medicamento(row[1], row[2], Boolean.parseBoolean(row[3]), row[4],
                         row[5], row[6].replaceAll(",", ";"), row[7], Integer.parseInt(row[8]), row[9], row[10]);
                 med.setMedId(Integer.parseInt(row[0]));
-                adicionarMedicamento(med);
+            } catch (RuntimeException e) {
+                // O ID da linha continua ocupado, para que os seguintes não mudem (o histórico aponta para eles)
+                this.lastMedId++;
+                ignorados++;
+                continue;
             }
-        } catch (IOException | CsvException e) {
+            registrarMedicamento(med, this.lastMedId + 1);
+            lidas++;
+        }
+        if (ignorados > 0) {
+            System.out.println(ignorados + " medicamentos inválidos foram ignorados no upload desse arquivo.");
+        }
+        return lidas;
+    }
+
+    // Reinício: snapshot mais as linhas anexadas ao diário depois dele, ou o CSV inteiro. Como no
+    // Estoque.carregar, um snapshot novo só é gravado quando muitas linhas tiveram de vir do CSV.
+    public void carregar() {
+        diario.reparar();
+        int linhasCsv = lerSnapshot(caminhoSnapshot);
+        if (linhasCsv < 0 && new File(diario.getCaminho()).exists()) {
+            uploadCSV(diario.getCaminho());
+            linhasCsv = lastMedId;
+        }
+        if (linhasCsv >= Estoque.LINHAS_PARA_SNAPSHOT) {
+            salvarSnapshot(caminhoSnapshot);
+        }
+    }
+
+    // Devolve false, sem alterar o cadastro, quando o arquivo não existe ou não corresponde mais ao diário
+    public boolean carregarSnapshot(String caminho) {
+        return lerSnapshot(caminho) >= 0;
+    }
+
+    // Quantas linhas vieram do CSV depois do snapshot, ou -1 quando ele não pôde ser usado
+    private int lerSnapshot(String caminho) {
+        Snapshot.Leitura entrada;
+        try {
+            entrada = Snapshot.Leitura.abrir(caminho, Snapshot.TIPO_CADASTRO, diario.getCaminho());
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return -1;
+        }
+        if (entrada == null) {
+            return -1;
+        }
+
+        medicamentos.clear();
+        Arrays.fill(medicamentosPorId, null);
+        lastMedId = 0;
+        indice.limpar();
+        equivalentes.limpar();
+        try {
+            int ultimoId = entrada.getInt();
+            int quantidade = entrada.getInt();
+            for (int i = 0; i < quantidade; i++) {
+                int id = entrada.getInt();
+                String nome = entrada.getTexto();
+                List<String> princAtvs = new ArrayList<>();
+                int quantidadePrincAtvs = entrada.getInt();
+                for (int p = 0; p < quantidadePrincAtvs; p++) {
+                    princAtvs.add(entrada.getTexto());
+                }
+                boolean refri = entrada.getBoolean();
+                String func = entrada.getTexto();
+                String risco = entrada.getTexto();
+                List<Double> dosagens = new ArrayList<>();
+                int quantidadeDosagens = entrada.getInt();
+                for (int d = 0; d < quantidadeDosagens; d++) {
+                    dosagens.add(entrada.getDouble());
+                }
+                String undDosag = entrada.getTexto();
+                int qntDoses = entrada.getInt();
+                String marca = entrada.getTexto();
+                String envase = entrada.getTexto();
+                registrarMedicamento(new Medicamento(nome, princAtvs, refri, func, risco, dosagens, undDosag, qntDoses, marca, envase), id);
+            }
+            // Linhas inválidas no fim do cadastro também ocupam IDs
+            if (ultimoId < lastMedId) {
+                throw new IllegalStateException("Último ID menor que o do cadastro: " + ultimoId);
+            }
+            lastMedId = ultimoId;
+        } catch (RuntimeException e) {
+            // Qualquer falha na leitura invalida o snapshot, e a carga volta ao CSV
+            e.printStackTrace();
+            medicamentos.clear();
+            Arrays.fill(medicamentosPorId, null);
+            lastMedId = 0;
+            indice.limpar();
+            equivalentes.limpar();
+            return -1;
+        }
+
+        int linhasCsv = 0;
+        File arquivo = new File(diario.getCaminho());
+        if (arquivo.length() > entrada.getTamanhoDiario()) {
+            try (FileInputStream diarioCsv = new FileInputStream(arquivo)) {
+                diarioCsv.getChannel().position(entrada.getTamanhoDiario());
+                CSVReader reader = new CSVReader(new InputStreamReader(diarioCsv, StandardCharsets.UTF_8));
+                if (entrada.getTamanhoDiario() == 0) {
+                    reader.skip(1);
+                }
+                int antes = lastMedId;
+                lerMedicamentos(reader);
+                linhasCsv = lastMedId - antes;
+            } catch (IOException | CsvException e) {
+                e.printStackTrace();
+            }
+        }
+        return linhasCsv;
+    }
+
+    // Os IDs são gravados como estão: linhas inválidas ignoradas na carga deixam buracos na sequência,
+    // e o histórico aponta para os IDs originais
+    public void salvarSnapshot(String caminho) {
+        diario.sincronizar();
+        try (Snapshot.Escrita saida = new Snapshot.Escrita(caminho, Snapshot.TIPO_CADASTRO, diario.getCaminho())) {
+            saida.putInt(lastMedId);
+            saida.putInt(medicamentos.size());
+            for (Medicamento med : medicamentos) {
+                saida.putInt(med.getMedId());
+                saida.putTexto(med.getMedNome());
+                saida.putInt(med.getMedPrincAtvs().size());
+                for (String princAtv : med.getMedPrincAtvs()) {
+                    saida.putTexto(princAtv);
+                }
+                saida.putBoolean(med.isMedRefri());
+                saida.putTexto(med.getMedFunc());
+                saida.putTexto(med.getMedRisco());
+                saida.putInt(med.getMedDosag().size());
+                for (Double dosagem : med.getMedDosag()) {
+                    saida.putDouble(dosagem);
+                }
+                saida.putTexto(med.getMedUndDosag());
+                saida.putInt(med.getMedQntDoses());
+                saida.putTexto(med.getMedMarca());
+                saida.putTexto(med.getMedEnvase());
+            }
+            saida.concluir();
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     public void saveCSV(String filePath) {
         try (CSVWriter writer = new CSVWriter(new FileWriter(filePath))) {
-            String[] header = {"ID", "Nome", "Princípios Ativos", "Refrigerado", "Função", "Risco", "Dosagens", "Unidade", "Quantidade de Doses", "Marca", "Envase"};
-            writer.writeNext(header);
+            writer.writeNext(CABECALHO);
 
             for (Medicamento med : medicamentos) {
-                String[] data = {
-                        String.valueOf(med.getMedId()),
-                        med.getMedNome(),
-                        med.getPrincAtvsAsString(),
-                        String.valueOf(med.isMedRefri()),
-                        med.getMedFunc(),
-                        med.getMedRisco(),
-                        med.getDosagensAsString(),
-                        med.getMedUndDosag(),
-                        String.valueOf(med.getMedQntDoses()),
-                        med.getMedMarca(),
-                        med.getMedEnvase()
-                };
-                writer.writeNext(data);
+                writer.writeNext(paraLinha(med));
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    private String[] paraLinha(Medicamento med) {
+        return new String[]{
+                String.valueOf(med.getMedId()),
+                med.getMedNome(),
+                med.getPrincAtvsAsString(),
+                String.valueOf(med.isMedRefri()),
+                med.getMedFunc(),
+                med.getMedRisco(),
+                med.getDosagensAsString(),
+                med.getMedUndDosag(),
+                String.valueOf(med.getMedQntDoses()),
+                med.getMedMarca(),
+                med.getMedEnvase()
+        };
+    }
 }
\ No newline at end of file
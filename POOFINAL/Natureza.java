@@ -0,0 +1,32 @@
+package poofinal;
+
+// Natureza de um movimento de estoque; a descrição é o texto usado na interface e no CSV
+enum Natureza {
+    ENTRADA("Entrada"),
+    SAIDA("Saída");
+
+    private final String descricao;
+
+    Natureza(String descricao) {
+        this.descricao = descricao;
+    }
+
+    public String getDescricao() {
+        return descricao;
+    }
+
+    // Efeito do movimento sobre o saldo
+    public int getSinal() {
+        return this == SAIDA ? -1 : 1;
+    }
+
+    // Retorna null para textos que não são a descrição de uma natureza
+    public static Natureza deDescricao(String descricao) {
+        for (Natureza natureza : values()) {
+            if (natureza.descricao.equals(descricao)) {
+                return natureza;
+            }
+        }
+        return null;
+    }
+}
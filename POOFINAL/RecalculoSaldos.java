@@ -0,0 +1,285 @@
+package poofinal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+// Recalcula, a partir do histórico, os mesmos mapas que o Estoque mantém a cada registro (saldo por
+// medicamento, por local, detalhado por validade e validade vigente por local), para auditoria.
+//
+// No modo paralelo o histórico é dividido em trechos de linhas somados no ForkJoinPool em mapas
+// primitivos e combinados dois a dois. Somas não dependem da ordem, mas a validade vigente depende
+// da sequência das entradas de cada local: os trechos só separam as linhas de entrada por grupo de
+// locais, e cada grupo é percorrido em ordem por uma tarefa própria. O modo sequencial executa o
+// mesmo código em um único trecho, então os dois produzem os mesmos mapas.
+class RecalculoSaldos {
+    private static final int LINHAS_MINIMAS_POR_TRECHO = 1 << 16;
+    // Chave detalhada: 20 bits de local, 20 de medicamento e 24 da validade (0 para sem data)
+    private static final int BITS_ID = 20;
+    private static final int DESLOCAMENTO_DIA = 1 << 23;
+
+    private final Historico historico;
+    private final int grupos;
+
+    private Map<Integer, Integer> saldoPorMedicamento;
+    private Map<String, Map<Integer, Integer>> saldoPorLocal;
+    private Map<String, Map<Integer, Map<String, Integer>>> saldoDetalhado;
+    private Map<String, Map<Integer, String>> validadePorLocal;
+
+    private RecalculoSaldos(Historico historico, int grupos) {
+        this.historico = historico;
+        this.grupos = grupos;
+    }
+
+    public static RecalculoSaldos sequencial(Historico historico) {
+        RecalculoSaldos recalculo = new RecalculoSaldos(historico, 1);
+        Parcial parcial = recalculo.somarTrecho(0, historico.getQuantidadeLinhas());
+        recalculo.montarSaldos(parcial);
+        recalculo.validadePorLocal = recalculo.montarValidades(parcial, 0);
+        return recalculo;
+    }
+
+    public static RecalculoSaldos paralelo(Historico historico, ForkJoinPool pool) {
+        int paralelismo = pool.getParallelism();
+        RecalculoSaldos recalculo = new RecalculoSaldos(historico, paralelismo);
+        int linhas = historico.getQuantidadeLinhas();
+        // Alguns trechos por thread para equilibrar a carga sem multiplicar as combinações
+        int limite = Math.max(LINHAS_MINIMAS_POR_TRECHO, linhas / (paralelismo * 4) + 1);
+        Parcial parcial = pool.invoke(recalculo.new Soma(0, linhas, limite));
+
+        List<Map<String, Map<Integer, String>>> validades = new ArrayList<>();
+        List<RecursiveAction> tarefas = new ArrayList<>();
+        for (int g = 0; g < paralelismo; g++) {
+            int grupo = g;
+            validades.add(null);
+            tarefas.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    validades.set(grupo, recalculo.montarValidades(parcial, grupo));
+                }
+            });
+        }
+        tarefas.add(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                recalculo.montarSaldos(parcial);
+            }
+        });
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tarefas);
+            }
+        });
+
+        // Os grupos têm locais distintos
+        recalculo.validadePorLocal = new HashMap<>();
+        for (Map<String, Map<Integer, String>> grupo : validades) {
+            recalculo.validadePorLocal.putAll(grupo);
+        }
+        return recalculo;
+    }
+
+    public Map<Integer, Integer> getEstoqueAtualPorMedicamento() {
+        return saldoPorMedicamento;
+    }
+
+    public Map<String, Map<Integer, Integer>> getEstoqueAtualPorLocal() {
+        return saldoPorLocal;
+    }
+
+    public Map<String, Map<Integer, Map<String, Integer>>> getEstoqueAtualDetalhado() {
+        return saldoDetalhado;
+    }
+
+    public Map<String, Map<Integer, String>> getValidadePorLocal() {
+        return validadePorLocal;
+    }
+
+    // Resultado de um trecho de linhas
+    private class Parcial {
+        final MapaLongInt porMedicamento = new MapaLongInt();
+        final MapaLongInt porLocal = new MapaLongInt();
+        final MapaLongInt detalhado = new MapaLongInt();
+        // Movimentos cuja chave detalhada não cabe em um long, ou cuja validade não está no formato dd/MM/yyyy
+        final Map<String, Map<Integer, Map<String, Integer>>> detalhadoTexto = new HashMap<>();
+        // Linhas de entrada de cada grupo de locais, em trechos na ordem do histórico
+        final List<List<ListaInt>> entradas = new ArrayList<>();
+
+        Parcial() {
+            for (int g = 0; g < grupos; g++) {
+                entradas.add(new ArrayList<>());
+            }
+        }
+
+        void combinar(Parcial seguinte) {
+            porMedicamento.somarTudo(seguinte.porMedicamento);
+            porLocal.somarTudo(seguinte.porLocal);
+            detalhado.somarTudo(seguinte.detalhado);
+            somarDetalhado(detalhadoTexto, seguinte.detalhadoTexto);
+            for (int g = 0; g < grupos; g++) {
+                entradas.get(g).addAll(seguinte.entradas.get(g));
+            }
+        }
+    }
+
+    private class Soma extends RecursiveTask<Parcial> {
+        private final int inicio;
+        private final int fim;
+        private final int limite;
+
+        Soma(int inicio, int fim, int limite) {
+            this.inicio = inicio;
+            this.fim = fim;
+            this.limite = limite;
+        }
+
+        @Override
+        protected Parcial compute() {
+            if (fim - inicio <= limite) {
+                return somarTrecho(inicio, fim);
+            }
+            int meio = (inicio + fim) >>> 1;
+            Soma direita = new Soma(meio, fim, limite);
+            direita.fork();
+            Parcial parcial = new Soma(inicio, meio, limite).compute();
+            parcial.combinar(direita.join());
+            return parcial;
+        }
+    }
+
+    private Parcial somarTrecho(int inicio, int fim) {
+        Parcial parcial = new Parcial();
+        ListaInt[] entradas = new ListaInt[grupos];
+        for (int g = 0; g < grupos; g++) {
+            entradas[g] = new ListaInt();
+            parcial.entradas.get(g).add(entradas[g]);
+        }
+
+        for (int linha = inicio; linha < fim; linha++) {
+            if (historico.isRemovida(linha)) {
+                continue;
+            }
+            int medId = historico.getMedId(linha);
+            int localId = historico.getLocalId(linha);
+            Natureza natureza = historico.getNatureza(linha);
+            int quantidade = historico.getEstQnt(linha) * natureza.getSinal();
+
+            parcial.porMedicamento.somar(medId, quantidade);
+            parcial.porLocal.somar(chaveLocal(localId, medId), quantidade);
+
+            int diaValid = historico.getDiaValid(linha);
+            String validade = historico.getEstValid(linha);
+            if (cabeNaChave(localId, medId, diaValid) && validade.equals(Datas.formatar(diaValid))) {
+                parcial.detalhado.somar(chaveDetalhada(localId, medId, diaValid), quantidade);
+            } else {
+                parcial.detalhadoTexto.computeIfAbsent(TabelaLocais.paraNome(localId), k -> new HashMap<>())
+                        .computeIfAbsent(medId, k -> new HashMap<>())
+                        .merge(validade, quantidade, Integer::sum);
+            }
+
+            if (natureza == Natureza.ENTRADA) {
+                entradas[localId % grupos].add(linha);
+            }
+        }
+        return parcial;
+    }
+
+    private void montarSaldos(Parcial parcial) {
+        saldoPorMedicamento = new HashMap<>();
+        MapaLongInt porMedicamento = parcial.porMedicamento;
+        for (int i = 0; i < porMedicamento.capacidade(); i++) {
+            if (porMedicamento.ocupada(i)) {
+                saldoPorMedicamento.put((int) porMedicamento.chave(i), porMedicamento.valor(i));
+            }
+        }
+
+        saldoPorLocal = new HashMap<>();
+        MapaLongInt porLocal = parcial.porLocal;
+        for (int i = 0; i < porLocal.capacidade(); i++) {
+            if (porLocal.ocupada(i)) {
+                long chave = porLocal.chave(i);
+                saldoPorLocal.computeIfAbsent(TabelaLocais.paraNome((int) (chave >>> 32)), k -> new HashMap<>())
+                        .put((int) chave, porLocal.valor(i));
+            }
+        }
+
+        saldoDetalhado = new HashMap<>();
+        MapaLongInt detalhado = parcial.detalhado;
+        int mascara = (1 << BITS_ID) - 1;
+        for (int i = 0; i < detalhado.capacidade(); i++) {
+            if (detalhado.ocupada(i)) {
+                long chave = detalhado.chave(i);
+                int localId = (int) (chave >>> (64 - BITS_ID));
+                int medId = (int) (chave >>> (64 - 2 * BITS_ID)) & mascara;
+                int codigoDia = (int) chave & ((1 << (64 - 2 * BITS_ID)) - 1);
+                int diaValid = codigoDia == 0 ? Datas.SEM_DATA : codigoDia - DESLOCAMENTO_DIA;
+                saldoDetalhado.computeIfAbsent(TabelaLocais.paraNome(localId), k -> new HashMap<>())
+                        .computeIfAbsent(medId, k -> new HashMap<>())
+                        .put(Datas.formatar(diaValid), detalhado.valor(i));
+            }
+        }
+        somarDetalhado(saldoDetalhado, parcial.detalhadoTexto);
+    }
+
+    // Mesma regra de Estoque.atualizarValidade, aplicada às entradas do grupo na ordem do histórico
+    private Map<String, Map<Integer, String>> montarValidades(Parcial parcial, int grupo) {
+        MapaLongInt vigente = new MapaLongInt();
+        for (ListaInt trecho : parcial.entradas.get(grupo)) {
+            for (int i = 0; i < trecho.size(); i++) {
+                int linha = trecho.get(i);
+                long chave = chaveLocal(historico.getLocalId(linha), historico.getMedId(linha));
+                int existente = vigente.get(chave, -1);
+                if (existente < 0) {
+                    vigente.put(chave, linha);
+                    continue;
+                }
+                int diaData = historico.getDiaData(linha);
+                int diaExistente = historico.getDiaValid(existente);
+                if (diaData != Datas.SEM_DATA && diaExistente != Datas.SEM_DATA && diaData > diaExistente) {
+                    vigente.put(chave, linha);
+                }
+            }
+        }
+
+        Map<String, Map<Integer, String>> validades = new HashMap<>();
+        for (int i = 0; i < vigente.capacidade(); i++) {
+            if (vigente.ocupada(i)) {
+                long chave = vigente.chave(i);
+                validades.computeIfAbsent(TabelaLocais.paraNome((int) (chave >>> 32)), k -> new HashMap<>())
+                        .put((int) chave, historico.getEstValid(vigente.valor(i)));
+            }
+        }
+        return validades;
+    }
+
+    private static void somarDetalhado(Map<String, Map<Integer, Map<String, Integer>>> destino, Map<String, Map<Integer, Map<String, Integer>>> origem) {
+        for (Map.Entry<String, Map<Integer, Map<String, Integer>>> local : origem.entrySet()) {
+            Map<Integer, Map<String, Integer>> porMedicamento = destino.computeIfAbsent(local.getKey(), k -> new HashMap<>());
+            for (Map.Entry<Integer, Map<String, Integer>> med : local.getValue().entrySet()) {
+                Map<String, Integer> porValidade = porMedicamento.computeIfAbsent(med.getKey(), k -> new HashMap<>());
+                for (Map.Entry<String, Integer> validade : med.getValue().entrySet()) {
+                    porValidade.merge(validade.getKey(), validade.getValue(), Integer::sum);
+                }
+            }
+        }
+    }
+
+    private static long chaveLocal(int localId, int medId) {
+        return ((long) localId << 32) | (medId & 0xFFFFFFFFL);
+    }
+
+    private static boolean cabeNaChave(int localId, int medId, int diaValid) {
+        return localId < (1 << BITS_ID) && medId >= 0 && medId < (1 << BITS_ID)
+                && (diaValid == Datas.SEM_DATA || (diaValid > -DESLOCAMENTO_DIA && diaValid < DESLOCAMENTO_DIA));
+    }
+
+    private static long chaveDetalhada(int localId, int medId, int diaValid) {
+        long codigoDia = diaValid == Datas.SEM_DATA ? 0 : diaValid + DESLOCAMENTO_DIA;
+        return ((long) localId << (64 - BITS_ID)) | ((long) medId << (64 - 2 * BITS_ID)) | codigoDia;
+    }
+}
@@ -1,3 +1,5 @@
+package poofinal;
+
 import javax.swing.*;
 import javax.swing.text.MaskFormatter;
 import java.awt.*;
@@ -5,7 +7,6 @@ import java.awt.event.ItemEvent;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
 
 public class RegistroPanel extends JPanel {
     private JComboBox<String> naturezaComboBox;
@@ -181,8 +182,7 @@ public class RegistroPanel extends JPanel {
         }
 
         if ("Saída".equals(estNat)) {
-            List<Registro> lotes = estoque.getEstoquePorLote(medId, estLocal, estValid);
-            int quantidadeDisponivel = lotes.stream().mapToInt(Registro::getEstQnt).sum();
+            int quantidadeDisponivel = estoque.getSaldoLote(medId, estLocal, estValid);
 
             if (estQnt > quantidadeDisponivel) {
                 JOptionPane.showMessageDialog(RegistroPanel.this, "Quantidade não disponível no lote especificado. Registro não realizado.", "Erro", JOptionPane.ERROR_MESSAGE);
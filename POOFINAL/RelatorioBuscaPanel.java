@@ -1,9 +1,10 @@
+package poofinal;
+
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
 import java.awt.*;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
@@ -11,10 +12,12 @@ import java.util.List;
 public class RelatorioBuscaPanel extends JPanel {
     private JTable table;
     private DefaultTableModel tableModel;
+    private ConsultaTabela consulta;
     private Estoque estoque;
     private CadastroMedicamentos cadastro;
     private Set<Integer> selecionadosIds;
     private JTable selecionadosTable;
+    private JButton baixaLoteButton;
 
     public RelatorioBuscaPanel(CardLayout cardLayout, JPanel mainPanel, Estoque estoque, CadastroMedicamentos cadastro) {
         this.estoque = estoque;
@@ -32,6 +35,7 @@ public class RelatorioBuscaPanel extends JPanel {
             }
         };
         tableModel.setColumnIdentifiers(new String[]{"Local", "ID Medicamento", "Nome", "Quantidade a Retirar", "Validade", "Ação"});
+        consulta = new ConsultaTabela(tableModel);
         table = new JTable(tableModel);
         table.getColumn("Ação").setCellRenderer(new ButtonRenderer());
         table.getColumn("Ação").setCellEditor(new ButtonEditor(new JCheckBox()));
@@ -39,16 +43,49 @@ public class RelatorioBuscaPanel extends JPanel {
         add(scrollPane, BorderLayout.CENTER);
 
         JPanel botoesPanel = new JPanel();
+        baixaLoteButton = new JButton("Baixa em lote");
+        baixaLoteButton.addActionListener(e -> baixaEmLote());
+        botoesPanel.add(baixaLoteButton);
         JButton voltarButton = new JButton("Voltar");
         voltarButton.addActionListener(e -> cardLayout.show(mainPanel, "filtroMedicamento"));
         botoesPanel.add(voltarButton);
         add(botoesPanel, BorderLayout.SOUTH);
     }
 
+    // Baixa de toda a lista de retirada: ou todas as saídas são registradas, ou nenhuma
+    private void baixaEmLote() {
+        if (table.getRowCount() == 0) {
+            JOptionPane.showMessageDialog(this, "Nenhum item na lista de retirada.");
+            return;
+        }
+        int confirmacao = JOptionPane.showConfirmDialog(this, "Dar baixa em todos os " + table.getRowCount() + " itens da lista?", "Baixa em lote", JOptionPane.YES_NO_OPTION);
+        if (confirmacao != JOptionPane.YES_OPTION) {
+            return;
+        }
+        List<Registro> saidas = new ArrayList<>();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            saidas.add(saidaDaLinha(row));
+        }
+        if (estoque.novosRegistros(saidas, true)) {
+            loadRelatorio(selecionadosIds, estoque, cadastro, selecionadosTable);
+        }
+    }
+
+    private Registro saidaDaLinha(int row) {
+        int medId = (int) table.getValueAt(row, 1);
+        String local = (String) table.getValueAt(row, 0);
+        String validade = (String) table.getValueAt(row, 4);
+        int quantidade = (int) table.getValueAt(row, 3);
+        Date hoje = new Date();
+        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
+        String dataHoje = sdf.format(hoje);
+
+        return new Registro(dataHoje, medId, "Saída", local, validade, quantidade);
+    }
+
     public void loadRelatorio(Set<Integer> selecionadosIds, Estoque estoque, CadastroMedicamentos cadastro, JTable selecionadosTable) {
         this.selecionadosIds = selecionadosIds;
         this.selecionadosTable = selecionadosTable;
-        tableModel.setRowCount(0);
 
         Map<Integer, Integer> demanda = new HashMap<>();
         for (int i = 0; i < selecionadosTable.getRowCount(); i++) {
@@ -57,79 +94,23 @@ public class RelatorioBuscaPanel extends JPanel {
             demanda.put(medId, quantidade);
         }
 
-        Map<String, Map<Integer, Integer>> estoquePorLocal = estoque.getEstoqueAtualPorLocal();
-        Map<String, Map<Integer, String>> validadePorLocal = estoque.getValidadePorLocal();
-
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
-
+        Map<Integer, Integer> demandaSelecionada = new LinkedHashMap<>();
         for (Integer medId : selecionadosIds) {
             if (demanda.containsKey(medId)) {
-                Medicamento med = cadastro.getMedicamento(medId);
-                String medNome = med != null ? med.getMedNome() : "Desconhecido";
-                int quantidadeNecessaria = demanda.get(medId);
-
-                List<RegistroOrdenado> registrosOrdenados = new ArrayList<>();
-                for (String local : estoquePorLocal.keySet()) {
-                    if (estoquePorLocal.get(local).containsKey(medId)) {
-                        int quantidade = estoquePorLocal.get(local).get(medId);
-                        String validade = validadePorLocal.get(local).get(medId);
-                        try {
-                            Date validadeDate = sdf.parse(validade);
-                            registrosOrdenados.add(new RegistroOrdenado(local, medId, medNome, quantidade, validadeDate));
-                        } catch (ParseException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
-
-                registrosOrdenados.sort(Comparator.comparing(RegistroOrdenado::getValidade));
-
-                for (RegistroOrdenado registro : registrosOrdenados) {
-                    if (quantidadeNecessaria <= 0) {
-                        break;
-                    }
-                    int quantidadeRetirada = Math.min(quantidadeNecessaria, registro.getQuantidade());
-                    tableModel.addRow(new Object[]{registro.getLocal(), medId, medNome, quantidadeRetirada, sdf.format(registro.getValidade()), "Baixa no Estoque"});
-                    quantidadeNecessaria -= quantidadeRetirada;
-                }
+                demandaSelecionada.put(medId, demanda.get(medId));
             }
         }
-    }
-
-    class RegistroOrdenado {
-        private String local;
-        private int medId;
-        private String medNome;
-        private int quantidade;
-        private Date validade;
-
-        public RegistroOrdenado(String local, int medId, String medNome, int quantidade, Date validade) {
-            this.local = local;
-            this.medId = medId;
-            this.medNome = medNome;
-            this.quantidade = quantidade;
-            this.validade = validade;
-        }
-
-        public String getLocal() {
-            return local;
-        }
-
-        public int getMedId() {
-            return medId;
-        }
 
-        public String getMedNome() {
-            return medNome;
-        }
-
-        public int getQuantidade() {
-            return quantidade;
-        }
-
-        public Date getValidade() {
-            return validade;
-        }
+        // A demanda é lida da tabela aqui; só a alocação roda em segundo plano. A baixa em lote usa as
+        // linhas da tabela: só fica disponível com a tabela completa.
+        baixaLoteButton.setEnabled(false);
+        consulta.executar(linhas -> {
+            for (AlocadorFEFO.LinhaRetirada linha : new AlocadorFEFO(estoque).alocar(demandaSelecionada)) {
+                Medicamento med = cadastro.getMedicamento(linha.getMedId());
+                String medNome = med != null ? med.getMedNome() : "Desconhecido";
+                linhas.accept(new Object[]{linha.getLocal(), linha.getMedId(), medNome, linha.getQuantidade(), linha.getValidade(), "Baixa no Estoque"});
+            }
+        }, () -> baixaLoteButton.setEnabled(true));
     }
 
     class ButtonRenderer extends JButton implements TableCellRenderer {
@@ -158,15 +139,7 @@ public class RelatorioBuscaPanel extends JPanel {
             JButton button = new JButton(label);
             button.addActionListener(e -> {
                 fireEditingStopped();
-                int medId = (int) table.getValueAt(row, 1);
-                String local = (String) table.getValueAt(row, 0);
-                String validade = (String) table.getValueAt(row, 4);
-                int quantidade = (int) table.getValueAt(row, 3);
-                Date hoje = new Date();
-                SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
-                String dataHoje = sdf.format(hoje);
-
-                Registro novoRegistro = new Registro(dataHoje, medId, "Saída", local, validade, quantidade);
+                Registro novoRegistro = saidaDaLinha(row);
                 estoque.novoRegistro(novoRegistro, true);
                 loadRelatorio(selecionadosIds, estoque, cadastro, selecionadosTable);
             });
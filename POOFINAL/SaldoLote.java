@@ -0,0 +1,55 @@
+package poofinal;
+
+// Um lote é o medicamento com uma validade em um local: as linhas das entradas que o formaram
+// e o saldo que ainda resta dele depois das saídas. Muda com a trava do local, mas as consultas de
+// validade o leem sem ela (ver Estoque.verificarValidade), por isso os métodos são sincronizados.
+class SaldoLote {
+    private ListaInt entradas;
+    private int saldo;
+
+    public SaldoLote() {
+        this(new ListaInt(), 0);
+    }
+
+    SaldoLote(ListaInt entradas, int saldo) {
+        this.entradas = entradas;
+        this.saldo = saldo;
+    }
+
+    public synchronized int getSaldo() {
+        return saldo;
+    }
+
+    // Com a trava do local, ou a exclusiva do histórico
+    ListaInt getEntradas() {
+        return entradas;
+    }
+
+    synchronized int[] getLinhasEntradas() {
+        return entradas.paraArray();
+    }
+
+    synchronized void adicionarEntrada(int linha, int quantidade) {
+        entradas.add(linha);
+        saldo += quantidade;
+    }
+
+    synchronized void removerEntrada(int linha, int quantidade) {
+        if (entradas.remover(linha)) {
+            saldo -= quantidade;
+        }
+    }
+
+    synchronized void somar(int quantidade) {
+        saldo += quantidade;
+    }
+
+    synchronized boolean isVazio() {
+        return entradas.isEmpty();
+    }
+
+    // Linha da entrada mais recente, ou -1
+    synchronized int getUltimaEntrada() {
+        return entradas.ultimo();
+    }
+}
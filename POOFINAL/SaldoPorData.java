@@ -0,0 +1,171 @@
+package poofinal;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Saldos em uma data qualquer. Checkpoints guardam o saldo acumulado antes de um dia (medId -> local ->
+// quantidade) e ficam espaçados por número de movimentos, não por mês, para que a memória dependa do
+// tamanho do estoque e não do período coberto. A consulta parte do checkpoint mais próximo e soma os
+// movimentos seguintes, que formam um trecho contínuo do índice por data do estoque.
+class SaldoPorData {
+    // Limite de movimentos somados por consulta
+    private static final int LINHAS_POR_CHECKPOINT = 16384;
+
+    private final Historico historico;
+    private final IndicePorData porData;
+    private TreeMap<Integer, Map<Integer, Map<String, Integer>>> checkpoints;
+
+    public SaldoPorData(Historico historico, IndicePorData porData) {
+        this.historico = historico;
+        this.porData = porData;
+        this.checkpoints = new TreeMap<>();
+    }
+
+    public void limpar() {
+        checkpoints.clear();
+    }
+
+    // Chamado depois que a linha entrou no índice por data
+    public void adicionar(int linha) {
+        int dia = historico.getDiaData(linha);
+        Map.Entry<Integer, Map<Integer, Map<String, Integer>>> anterior = checkpoints.floorEntry(dia);
+        if (anterior == null) {
+            // Nenhum movimento é anterior a este dia
+            checkpoints.put(dia, new HashMap<>());
+        } else if (anterior.getKey() < dia && porData.posicao(dia) - porData.posicao(anterior.getKey()) >= LINHAS_POR_CHECKPOINT) {
+            Map<Integer, Map<String, Integer>> saldoInicial = new HashMap<>();
+            copiar(saldoInicial, anterior.getValue(), null);
+            somarTrecho(saldoInicial, anterior.getKey(), dia - 1, null);
+            checkpoints.put(dia, saldoInicial);
+        }
+
+        // Registros com data passada entram nos checkpoints seguintes
+        for (Map<Integer, Map<String, Integer>> seguinte : checkpoints.tailMap(dia, false).values()) {
+            aplicar(seguinte, linha, 1);
+        }
+    }
+
+    // Como em adicionar, todos os checkpoints depois da data da linha mudam: o custo cresce com o histórico
+    public void remover(int linha) {
+        for (Map<Integer, Map<String, Integer>> seguinte : checkpoints.tailMap(historico.getDiaData(linha), false).values()) {
+            aplicar(seguinte, linha, -1);
+        }
+    }
+
+    // Recalcula todos os checkpoints em uma passada pelo índice por data, depois de uma carga
+    public void reconstruir() {
+        checkpoints.clear();
+        Map<Integer, Map<String, Integer>> acumulado = new HashMap<>();
+        int diaAnterior = Datas.SEM_DATA;
+        int desdeCheckpoint = LINHAS_POR_CHECKPOINT;
+        for (int p = 0; p < porData.tamanho(); p++) {
+            int linha = porData.get(p);
+            int dia = historico.getDiaData(linha);
+            // Checkpoints só na virada de um dia, já que guardam o saldo antes do dia
+            if (dia != diaAnterior && desdeCheckpoint >= LINHAS_POR_CHECKPOINT) {
+                Map<Integer, Map<String, Integer>> checkpoint = new HashMap<>();
+                copiar(checkpoint, acumulado, null);
+                checkpoints.put(dia, checkpoint);
+                desdeCheckpoint = 0;
+            }
+            aplicar(acumulado, linha, 1);
+            diaAnterior = dia;
+            desdeCheckpoint++;
+        }
+    }
+
+    void salvar(Snapshot.Escrita saida) throws IOException {
+        saida.putInt(checkpoints.size());
+        for (Map.Entry<Integer, Map<Integer, Map<String, Integer>>> checkpoint : checkpoints.entrySet()) {
+            saida.putInt(checkpoint.getKey());
+            saida.putInt(checkpoint.getValue().size());
+            for (Map.Entry<Integer, Map<String, Integer>> med : checkpoint.getValue().entrySet()) {
+                saida.putInt(med.getKey());
+                saida.putInt(med.getValue().size());
+                for (Map.Entry<String, Integer> local : med.getValue().entrySet()) {
+                    saida.putTexto(local.getKey());
+                    saida.putInt(local.getValue());
+                }
+            }
+        }
+    }
+
+    void carregar(Snapshot.Leitura entrada) {
+        checkpoints.clear();
+        int quantidade = entrada.getInt();
+        for (int c = 0; c < quantidade; c++) {
+            int dia = entrada.getInt();
+            int medicamentos = entrada.getInt();
+            Map<Integer, Map<String, Integer>> checkpoint = HashMap.newHashMap(medicamentos);
+            for (int m = 0; m < medicamentos; m++) {
+                int medId = entrada.getInt();
+                int locais = entrada.getInt();
+                Map<String, Integer> porLocal = HashMap.newHashMap(locais);
+                for (int l = 0; l < locais; l++) {
+                    porLocal.put(TabelaLocais.canonico(entrada.getTexto()), entrada.getInt());
+                }
+                checkpoint.put(medId, porLocal);
+            }
+            checkpoints.put(dia, checkpoint);
+        }
+    }
+
+    // Saldo por medicamento e local considerando os registros com data até o dia informado
+    public Map<Integer, Map<String, Integer>> saldoEm(int dia, Collection<Integer> medIds) {
+        Set<Integer> filtro = medIds == null || medIds.isEmpty() ? null : new HashSet<>(medIds);
+        Map<Integer, Map<String, Integer>> saldo = new HashMap<>();
+
+        Map.Entry<Integer, Map<Integer, Map<String, Integer>>> entrada = checkpoints.floorEntry(dia);
+        if (entrada != null) {
+            copiar(saldo, entrada.getValue(), filtro);
+            somarTrecho(saldo, entrada.getKey(), dia, filtro);
+        }
+        return saldo;
+    }
+
+    private static void copiar(Map<Integer, Map<String, Integer>> destino, Map<Integer, Map<String, Integer>> origem, Set<Integer> filtro) {
+        if (filtro == null) {
+            for (Map.Entry<Integer, Map<String, Integer>> med : origem.entrySet()) {
+                destino.put(med.getKey(), new HashMap<>(med.getValue()));
+            }
+        } else {
+            for (Integer medId : filtro) {
+                Map<String, Integer> porLocal = origem.get(medId);
+                if (porLocal != null) {
+                    destino.put(medId, new HashMap<>(porLocal));
+                }
+            }
+        }
+    }
+
+    private void somarTrecho(Map<Integer, Map<String, Integer>> destino, int deDia, int ateDia, Set<Integer> filtro) {
+        for (int p = porData.posicao(deDia); p < porData.tamanho(); p++) {
+            int linha = porData.get(p);
+            if (historico.getDiaData(linha) > ateDia) {
+                break;
+            }
+            if (filtro == null || filtro.contains(historico.getMedId(linha))) {
+                aplicar(destino, linha, 1);
+            }
+        }
+    }
+
+    private void aplicar(Map<Integer, Map<String, Integer>> saldo, int linha, int sinal) {
+        int quantidade = sinal * historico.getEstQnt(linha) * historico.getNatureza(linha).getSinal();
+        if (quantidade == 0) {
+            return;
+        }
+        int medId = historico.getMedId(linha);
+        Map<String, Integer> porLocal = saldo.computeIfAbsent(medId, k -> new HashMap<>());
+        // Locais zerados saem do checkpoint para que ele cresça com o estoque, não com o histórico
+        porLocal.merge(TabelaLocais.paraNome(historico.getLocalId(linha)), quantidade, (a, b) -> a + b == 0 ? null : a + b);
+        if (porLocal.isEmpty()) {
+            saldo.remove(medId);
+        }
+    }
+}
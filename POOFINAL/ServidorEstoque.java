@@ -0,0 +1,313 @@
+package poofinal;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Modo sem janela: as consultas e os registros do estoque em JSON por HTTP, só no endereço local, para
+// o caixa e os painéis. Cada requisição roda em uma thread virtual; o Estoque já aceita registros de
+// várias threads ao mesmo tempo (ver Estoque.travasPorLocal).
+//
+//   GET  /estoque                       saldo de cada medicamento ({"medId": quantidade})
+//   GET  /estoque?data=dd/MM/yyyy       saldo de cada medicamento na data
+//   GET  /estoque/locais                saldos por local ({"local": {"medId": quantidade}})
+//   GET  /estoque/locais?local=X        saldos de um local ({"medId": quantidade})
+//   GET  /vencidos?dias=N               entradas vencidas ou que vencem em N dias e ainda têm saldo
+//   GET  /historico?inicio=&fim=&limite= registros do período em ordem de data
+//   GET  /equivalentes?medId=X          equivalentes de X com saldo, do maior saldo para o menor
+//   POST /registros                     um registro, ou uma lista registrada toda ou nada
+//
+// Registros em JSON: {"id", "data", "medId", "natureza", "local", "validade", "quantidade"}; no POST o id
+// é ignorado. Erros voltam como {"erro": mensagem}.
+// Uso: java -cp POOFINAL/target/classes:opencsv.jar poofinal.ServidorEstoque [porta]
+public class ServidorEstoque {
+    private static final int PORTA_PADRAO = 8080;
+    private static final int LIMITE_HISTORICO = 1000;
+    private static final int LIMITE_HISTORICO_MAXIMO = 100000;
+
+    static {
+        // Sem TCP_NODELAY o cabeçalho e o corpo da resposta vão em pacotes separados e cada requisição
+        // espera o ACK atrasado do cliente (uns 40 ms). Lida quando a primeira HttpServer é criada.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final Estoque estoque;
+    private final CadastroMedicamentos cadastro;
+    private final HttpServer servidor;
+    private final ExecutorService threads;
+
+    // Porta 0 escolhe uma porta livre (ver getPorta)
+    public ServidorEstoque(Estoque estoque, CadastroMedicamentos cadastro, int porta) throws IOException {
+        this.estoque = estoque;
+        this.cadastro = cadastro;
+        this.servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 0);
+        this.threads = Executors.newVirtualThreadPerTaskExecutor();
+        servidor.setExecutor(threads);
+        servidor.createContext("/estoque", tratar("GET", this::estoque));
+        servidor.createContext("/vencidos", tratar("GET", this::vencidos));
+        servidor.createContext("/historico", tratar("GET", this::historico));
+        servidor.createContext("/equivalentes", tratar("GET", this::equivalentes));
+        servidor.createContext("/registros", tratar("POST", this::registros));
+    }
+
+    public void iniciar() {
+        servidor.start();
+    }
+
+    // Espera até segundos pelas requisições em andamento
+    public void parar(int segundos) {
+        servidor.stop(segundos);
+        threads.shutdown();
+    }
+
+    public int getPorta() {
+        return servidor.getAddress().getPort();
+    }
+
+    private interface Rota {
+        Resposta responder(HttpExchange troca) throws IOException;
+    }
+
+    private record Resposta(int status, Object corpo) {
+    }
+
+    private HttpHandler tratar(String metodo, Rota rota) {
+        return troca -> {
+            Resposta resposta;
+            try {
+                if (!troca.getRequestMethod().equals(metodo)) {
+                    resposta = erro(405, "Método não permitido: use " + metodo + ".");
+                } else {
+                    resposta = rota.responder(troca);
+                }
+            } catch (IllegalArgumentException e) {
+                resposta = erro(400, e.getMessage());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                resposta = erro(500, "Erro interno.");
+            }
+            responder(troca, resposta);
+        };
+    }
+
+    private static void responder(HttpExchange troca, Resposta resposta) throws IOException {
+        byte[] corpo = Json.escrever(resposta.corpo()).getBytes(StandardCharsets.UTF_8);
+        troca.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        troca.sendResponseHeaders(resposta.status(), corpo.length);
+        try (OutputStream saida = troca.getResponseBody()) {
+            saida.write(corpo);
+        }
+    }
+
+    private static Resposta erro(int status, String mensagem) {
+        return new Resposta(status, Map.of("erro", mensagem));
+    }
+
+    private Resposta estoque(HttpExchange troca) {
+        String caminho = troca.getRequestURI().getPath();
+        Map<String, String> parametros = parametros(troca);
+        if (caminho.equals("/estoque") || caminho.equals("/estoque/")) {
+            String data = parametros.get("data");
+            if (data == null) {
+                return new Resposta(200, estoque.getEstoqueAtualPorMedicamento());
+            }
+            dia(data, "data");
+            return new Resposta(200, estoque.getEstoqueNaData(data, null));
+        }
+        if (caminho.equals("/estoque/locais") || caminho.equals("/estoque/locais/")) {
+            String local = parametros.get("local");
+            if (local == null) {
+                return new Resposta(200, estoque.getEstoqueAtualPorLocal());
+            }
+            return new Resposta(200, estoque.getEstoqueAtualPorLocal().getOrDefault(local, Map.of()));
+        }
+        return erro(404, "Caminho não encontrado: " + caminho);
+    }
+
+    private Resposta vencidos(HttpExchange troca) {
+        int dias = inteiro(parametros(troca).get("dias"), "dias", 0);
+        return new Resposta(200, paraJson(estoque.verificarValidade(dias)));
+    }
+
+    private Resposta historico(HttpExchange troca) {
+        Map<String, String> parametros = parametros(troca);
+        // Sem início ou fim o período fica aberto daquele lado
+        int inicio = parametros.containsKey("inicio") ? dia(parametros.get("inicio"), "inicio") : Integer.MIN_VALUE;
+        int fim = parametros.containsKey("fim") ? dia(parametros.get("fim"), "fim") : Integer.MAX_VALUE - 1;
+        int limite = inteiro(parametros.get("limite"), "limite", LIMITE_HISTORICO);
+        if (limite < 0 || limite > LIMITE_HISTORICO_MAXIMO) {
+            throw new IllegalArgumentException("limite deve estar entre 0 e " + LIMITE_HISTORICO_MAXIMO + ".");
+        }
+        return new Resposta(200, paraJson(estoque.getRegistrosPorPeriodo(inicio, fim, limite)));
+    }
+
+    private Resposta equivalentes(HttpExchange troca) {
+        String texto = parametros(troca).get("medId");
+        if (texto == null) {
+            throw new IllegalArgumentException("medId é obrigatório.");
+        }
+        int medId = inteiro(texto, "medId", 0);
+        if (cadastro.getMedicamento(medId) == null) {
+            return erro(404, "ID desse Medicamento ainda não existe.");
+        }
+        List<Map<String, Object>> objetos = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> equivalente : estoque.getEquivalentesEmEstoque(medId).entrySet()) {
+            Map<String, Object> objeto = new LinkedHashMap<>();
+            objeto.put("medId", equivalente.getKey());
+            objeto.put("nome", cadastro.getMedicamento(equivalente.getKey()).getMedNome());
+            objeto.put("saldo", equivalente.getValue());
+            objetos.add(objeto);
+        }
+        return new Resposta(200, objetos);
+    }
+
+    // As mesmas verificações do RegistroPanel antes das regras do Estoque
+    private Resposta registros(HttpExchange troca) throws IOException {
+        String corpo;
+        try (InputStream entrada = troca.getRequestBody()) {
+            corpo = new String(entrada.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        List<Map<String, Object>> objetos = Json.lerObjetos(corpo);
+        List<Registro> registros = new ArrayList<>(objetos.size());
+        for (Map<String, Object> objeto : objetos) {
+            registros.add(paraRegistro(objeto));
+        }
+
+        String erro = estoque.registrar(registros);
+        if (erro != null) {
+            return erro(422, erro);
+        }
+        List<Integer> ids = new ArrayList<>(registros.size());
+        for (Registro registro : registros) {
+            ids.add(registro.getEstId());
+        }
+        return new Resposta(201, Map.of("ids", ids));
+    }
+
+    private Registro paraRegistro(Map<String, Object> objeto) {
+        String data = texto(objeto, "data");
+        int medId = numero(objeto, "medId");
+        String natureza = texto(objeto, "natureza");
+        String local = texto(objeto, "local");
+        String validade = objeto.get("validade") == null ? "" : texto(objeto, "validade");
+        int quantidade = numero(objeto, "quantidade");
+
+        if (cadastro.getMedicamento(medId) == null) {
+            throw new IllegalArgumentException("ID desse Medicamento ainda não existe.");
+        }
+        if (Natureza.deDescricao(natureza) == null) {
+            throw new IllegalArgumentException("natureza deve ser \"Entrada\" ou \"Saída\".");
+        }
+        // Um local vazio criaria um local sem nome no estoque
+        if (local.isBlank()) {
+            throw new IllegalArgumentException("local não pode ser vazio.");
+        }
+        if (dia(data, "data") > Datas.hoje()) {
+            throw new IllegalArgumentException("Data não pode ser futura.");
+        }
+        if (quantidade <= 0) {
+            throw new IllegalArgumentException("quantidade deve ser maior que zero.");
+        }
+        if (Natureza.deDescricao(natureza) == Natureza.ENTRADA && dia(validade, "validade") < Datas.hoje()) {
+            throw new IllegalArgumentException("Validade não pode ser anterior ao dia de hoje.");
+        }
+        return new Registro(data, medId, natureza, local, validade, quantidade);
+    }
+
+    private static List<Map<String, Object>> paraJson(List<Registro> registros) {
+        List<Map<String, Object>> objetos = new ArrayList<>(registros.size());
+        for (Registro reg : registros) {
+            Map<String, Object> objeto = new LinkedHashMap<>();
+            objeto.put("id", reg.getEstId());
+            objeto.put("data", reg.getEstData());
+            objeto.put("medId", reg.getMedId());
+            objeto.put("natureza", reg.getEstNat());
+            objeto.put("local", reg.getEstLocal());
+            objeto.put("validade", reg.getEstValid());
+            objeto.put("quantidade", reg.getEstQnt());
+            objetos.add(objeto);
+        }
+        return objetos;
+    }
+
+    private static Map<String, String> parametros(HttpExchange troca) {
+        Map<String, String> parametros = new HashMap<>();
+        String consulta = troca.getRequestURI().getRawQuery();
+        if (consulta == null || consulta.isEmpty()) {
+            return parametros;
+        }
+        for (String par : consulta.split("&")) {
+            int igual = par.indexOf('=');
+            String nome = igual < 0 ? par : par.substring(0, igual);
+            String valor = igual < 0 ? "" : par.substring(igual + 1);
+            parametros.put(URLDecoder.decode(nome, StandardCharsets.UTF_8), URLDecoder.decode(valor, StandardCharsets.UTF_8));
+        }
+        return parametros;
+    }
+
+    private static int dia(String data, String nome) {
+        int dia = Datas.paraDia(data);
+        if (dia == Datas.SEM_DATA) {
+            throw new IllegalArgumentException(nome + " deve estar no formato válido (DD/MM/AAAA).");
+        }
+        return dia;
+    }
+
+    private static int inteiro(String valor, String nome, int padrao) {
+        if (valor == null) {
+            return padrao;
+        }
+        try {
+            return Integer.parseInt(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(nome + " deve ser um número inteiro.");
+        }
+    }
+
+    private static String texto(Map<String, Object> objeto, String nome) {
+        if (!(objeto.get(nome) instanceof String valor)) {
+            throw new IllegalArgumentException(nome + " deve ser um texto.");
+        }
+        return valor;
+    }
+
+    private static int numero(Map<String, Object> objeto, String nome) {
+        if (!(objeto.get(nome) instanceof Long valor) || valor < Integer.MIN_VALUE || valor > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(nome + " deve ser um número inteiro.");
+        }
+        return valor.intValue();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int porta = args.length > 0 ? Integer.parseInt(args[0]) : PORTA_PADRAO;
+        CadastroMedicamentos cadastro = new CadastroMedicamentos();
+        Estoque estoque = new Estoque(cadastro);
+
+        // Como no MedicamentoGUI: cadastro e histórico são lidos em paralelo
+        CompletableFuture<Void> leituraCadastro = CompletableFuture.runAsync(cadastro::carregar);
+        estoque.carregar();
+        leituraCadastro.join();
+
+        ServidorEstoque servidor = new ServidorEstoque(estoque, cadastro, porta);
+        servidor.iniciar();
+        System.out.println("Servidor do estoque em http://127.0.0.1:" + servidor.getPorta() + "/");
+    }
+}
@@ -0,0 +1,280 @@
+package poofinal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Arquivo binário com o estado carregado em memória, para reiniciar sem reler o CSV. O layout é um
+// cabeçalho fixo, as seções de números na ordem em que quem usa a classe as escreve e lê, e no fim o
+// dicionário dos textos que as seções referenciam por índice. Números em little-endian.
+//
+// O diário CSV continua sendo o registro durável: o cabeçalho guarda o tamanho do diário refletido no
+// estado e um CRC dos seus últimos bytes, e quem carrega relê só o que foi anexado depois desse ponto.
+// Um segundo CRC cobre tudo o que vem depois do cabeçalho: um snapshot corrompido é recusado inteiro,
+// e quem carrega volta ao CSV.
+
+final class Snapshot {
+    static final int TIPO_ESTOQUE = 1;
+    static final int TIPO_CADASTRO = 2;
+
+    private static final int ASSINATURA = 0x50534E41; // "ANSP"
+    private static final int VERSAO = 4;
+    // assinatura, versão, tipo, posição do dicionário, tamanho do diário, CRC do diário, CRC do conteúdo
+    private static final int TAMANHO_CABECALHO = 4 + 4 + 4 + 8 + 8 + 8 + 8;
+    private static final int BYTES_VERIFICADOS = 4096;
+
+    private Snapshot() {
+    }
+
+    static final class Escrita implements Closeable {
+        private final Path destino;
+        private final Path temporario;
+        private final int tipo;
+        private final long tamanhoDiario;
+        private final long crcDiario;
+        private final FileChannel canal;
+        private final ByteBuffer buffer;
+        private final Map<String, Integer> indices;
+        private final List<String> textos;
+        private final CRC32 crcConteudo;
+        private boolean concluida;
+
+        // O diário precisa estar sincronizado: o tamanho dele é o ponto a partir do qual a carga volta a ler o CSV
+        Escrita(String caminho, int tipo, String caminhoDiario) throws IOException {
+            this.destino = Paths.get(caminho);
+            this.temporario = Paths.get(caminho + ".tmp");
+            this.tipo = tipo;
+            Path diario = Paths.get(caminhoDiario);
+            this.tamanhoDiario = Files.exists(diario) ? Files.size(diario) : 0;
+            this.crcDiario = crcDoFinal(diario, tamanhoDiario);
+            this.canal = FileChannel.open(temporario, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.canal.position(TAMANHO_CABECALHO);
+            this.buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            this.indices = new HashMap<>();
+            this.textos = new ArrayList<>();
+            this.crcConteudo = new CRC32();
+        }
+
+        void putInt(int valor) throws IOException {
+            garantir(4);
+            buffer.putInt(valor);
+        }
+
+        void putDouble(double valor) throws IOException {
+            garantir(8);
+            buffer.putDouble(valor);
+        }
+
+        void putBoolean(boolean valor) throws IOException {
+            garantir(1);
+            buffer.put((byte) (valor ? 1 : 0));
+        }
+
+        // Colunas inteiras são copiadas em blocos, sem um putInt por valor
+        void putInts(int[] valores, int quantidade) throws IOException {
+            int escritos = 0;
+            while (escritos < quantidade) {
+                garantir(4);
+                int bloco = Math.min(quantidade - escritos, buffer.remaining() / 4);
+                buffer.asIntBuffer().put(valores, escritos, bloco);
+                buffer.position(buffer.position() + bloco * 4);
+                escritos += bloco;
+            }
+        }
+
+        void putBytes(byte[] valores, int quantidade) throws IOException {
+            int escritos = 0;
+            while (escritos < quantidade) {
+                garantir(1);
+                int bloco = Math.min(quantidade - escritos, buffer.remaining());
+                buffer.put(valores, escritos, bloco);
+                escritos += bloco;
+            }
+        }
+
+        // Textos repetidos ocupam uma entrada só do dicionário; null é gravado como -1
+        void putTexto(String texto) throws IOException {
+            putInt(texto == null ? -1 : indices.computeIfAbsent(texto, t -> {
+                textos.add(t);
+                return textos.size() - 1;
+            }));
+        }
+
+        // Grava o dicionário e o cabeçalho e troca o arquivo anterior pelo novo
+        void concluir() throws IOException {
+            esvaziar();
+            long posicaoDicionario = canal.position();
+            putInt(textos.size());
+            for (String texto : textos) {
+                byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+                putInt(bytes.length);
+                putBytes(bytes, bytes.length);
+            }
+            esvaziar();
+
+            ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO).order(ByteOrder.LITTLE_ENDIAN);
+            cabecalho.putInt(ASSINATURA).putInt(VERSAO).putInt(tipo)
+                    .putLong(posicaoDicionario).putLong(tamanhoDiario).putLong(crcDiario).putLong(crcConteudo.getValue());
+            cabecalho.flip();
+            canal.write(cabecalho, 0);
+            canal.force(true);
+            canal.close();
+            concluida = true;
+
+            try {
+                Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!concluida) {
+                canal.close();
+                Files.deleteIfExists(temporario);
+            }
+        }
+
+        private void garantir(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                esvaziar();
+            }
+        }
+
+        private void esvaziar() throws IOException {
+            buffer.flip();
+            crcConteudo.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    static final class Leitura {
+        private final ByteBuffer buffer;
+        private final String[] textos;
+        private final long tamanhoDiario;
+
+        private Leitura(ByteBuffer buffer, String[] textos, long tamanhoDiario) {
+            this.buffer = buffer;
+            this.textos = textos;
+            this.tamanhoDiario = tamanhoDiario;
+        }
+
+        // Devolve null quando não há arquivo, quando ele é de outra versão ou tipo, quando o conteúdo não
+        // confere com o CRC, ou quando o diário não começa mais pelo conteúdo que o snapshot reflete (foi
+        // compactado ou trocado)
+        static Leitura abrir(String caminho, int tipo, String caminhoDiario) throws IOException {
+            Path arquivo = Paths.get(caminho);
+            if (!Files.exists(arquivo) || Files.size(arquivo) < TAMANHO_CABECALHO || Files.size(arquivo) > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer mapa;
+            try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+                mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            }
+            ByteBuffer buffer = mapa.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != ASSINATURA || buffer.getInt() != VERSAO || buffer.getInt() != tipo) {
+                return null;
+            }
+            long posicaoDicionario = buffer.getLong();
+            long tamanhoDiario = buffer.getLong();
+            long crcDiario = buffer.getLong();
+            long crcConteudo = buffer.getLong();
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().position(TAMANHO_CABECALHO));
+            if (crc.getValue() != crcConteudo || posicaoDicionario < TAMANHO_CABECALHO || posicaoDicionario > buffer.limit()) {
+                return null;
+            }
+
+            Path diario = Paths.get(caminhoDiario);
+            long tamanhoAtual = Files.exists(diario) ? Files.size(diario) : 0;
+            if (tamanhoAtual < tamanhoDiario || crcDoFinal(diario, tamanhoDiario) != crcDiario) {
+                return null;
+            }
+
+            buffer.position((int) posicaoDicionario);
+            String[] textos = new String[buffer.getInt()];
+            for (int i = 0; i < textos.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                textos[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            buffer.position(TAMANHO_CABECALHO);
+            return new Leitura(buffer, textos, tamanhoDiario);
+        }
+
+        // Posição do diário CSV a partir da qual as linhas ainda não estão no snapshot
+        long getTamanhoDiario() {
+            return tamanhoDiario;
+        }
+
+        int getInt() {
+            return buffer.getInt();
+        }
+
+        double getDouble() {
+            return buffer.getDouble();
+        }
+
+        boolean getBoolean() {
+            return buffer.get() != 0;
+        }
+
+        int[] getInts(int quantidade) {
+            int[] valores = new int[quantidade];
+            IntBuffer inteiros = buffer.asIntBuffer();
+            inteiros.get(valores);
+            buffer.position(buffer.position() + quantidade * 4);
+            return valores;
+        }
+
+        byte[] getBytes(int quantidade) {
+            byte[] valores = new byte[quantidade];
+            buffer.get(valores);
+            return valores;
+        }
+
+        String getTexto() {
+            int indice = buffer.getInt();
+            return indice < 0 ? null : textos[indice];
+        }
+    }
+
+    private static long crcDoFinal(Path diario, long tamanho) throws IOException {
+        CRC32 crc = new CRC32();
+        if (tamanho == 0) {
+            return crc.getValue();
+        }
+        long inicio = Math.max(0, tamanho - BYTES_VERIFICADOS);
+        ByteBuffer bytes = ByteBuffer.allocate((int) (tamanho - inicio));
+        try (FileChannel canal = FileChannel.open(diario, StandardOpenOption.READ)) {
+            while (bytes.hasRemaining()) {
+                if (canal.read(bytes, inicio + bytes.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        bytes.flip();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,51 @@
+package poofinal;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Tabela de símbolos dos locais: cada nome recebe um número pequeno e uma única instância de String.
+// Os registros guardam só o número, e os mapas indexados por local passam a receber sempre a mesma
+// instância, de modo que equals se resolve na comparação de referências.
+final class TabelaLocais {
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] nomes = new String[256];
+    private static int quantidade = 0;
+
+    private TabelaLocais() {
+    }
+
+    public static int paraId(String local) {
+        Integer id = ids.get(local);
+        return id != null ? id : registrar(local);
+    }
+
+    // Como paraId, mas sem registrar: -1 para um local que nenhum registro guardado usou. Para consultas
+    // e validações, em que o nome vem de fora e pode não ser de um local existente.
+    public static int buscar(String local) {
+        Integer id = local == null ? null : ids.get(local);
+        return id != null ? id : -1;
+    }
+
+    public static String paraNome(int id) {
+        return nomes[id];
+    }
+
+    // A instância única do nome, para textos que não vieram da tabela
+    public static String canonico(String local) {
+        return paraNome(paraId(local));
+    }
+
+    private static synchronized int registrar(String local) {
+        Integer id = ids.get(local);
+        if (id != null) {
+            return id;
+        }
+        if (quantidade == nomes.length) {
+            nomes = Arrays.copyOf(nomes, quantidade * 2);
+        }
+        nomes[quantidade] = local;
+        ids.put(local, quantidade);
+        return quantidade++;
+    }
+}
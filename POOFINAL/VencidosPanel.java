@@ -1,26 +1,43 @@
+package poofinal;
+
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
 import java.awt.*;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class VencidosPanel extends JPanel {
     private JTable table;
     private DefaultTableModel tableModel;
+    private ConsultaTabela consulta;
     private Estoque estoque;
     private CadastroMedicamentos cadastro;
+    private JComboBox<String> prazoComboBox;
+    private JButton baixaLoteButton;
 
     public VencidosPanel(CardLayout cardLayout, JPanel mainPanel, Estoque estoque, CadastroMedicamentos cadastro) {
         this.estoque = estoque;
         this.cadastro = cadastro;
         setLayout(new BorderLayout());
 
+        JPanel topoPanel = new JPanel(new BorderLayout());
         JLabel tituloLabel = new JLabel("Medicamentos Vencidos", SwingConstants.CENTER);
         tituloLabel.setFont(new Font("Arial", Font.BOLD, 24));
-        add(tituloLabel, BorderLayout.NORTH);
+        topoPanel.add(tituloLabel, BorderLayout.NORTH);
+
+        JPanel optionsPanel = new JPanel(new FlowLayout());
+        prazoComboBox = new JComboBox<>(new String[]{"Vencidos", "Vencem em até 30 dias", "Vencem em até 90 dias"});
+        prazoComboBox.addActionListener(e -> loadVencidos());
+        optionsPanel.add(new JLabel("Mostrar:"));
+        optionsPanel.add(prazoComboBox);
+        topoPanel.add(optionsPanel, BorderLayout.SOUTH);
+        add(topoPanel, BorderLayout.NORTH);
 
         tableModel = new DefaultTableModel() {
             @Override
@@ -29,6 +46,7 @@ public class VencidosPanel extends JPanel {
             }
         };
         tableModel.setColumnIdentifiers(new String[]{"Local", "ID Medicamento", "Nome", "Quantidade", "Validade", "Ação"});
+        consulta = new ConsultaTabela(tableModel);
         table = new JTable(tableModel);
         table.getColumn("Ação").setCellRenderer(new ButtonRenderer());
         table.getColumn("Ação").setCellEditor(new ButtonEditor(new JCheckBox()));
@@ -36,6 +54,9 @@ public class VencidosPanel extends JPanel {
         add(scrollPane, BorderLayout.CENTER);
 
         JPanel botoesPanel = new JPanel();
+        baixaLoteButton = new JButton("Baixa em lote");
+        baixaLoteButton.addActionListener(e -> baixaEmLote());
+        botoesPanel.add(baixaLoteButton);
         JButton voltarButton = new JButton("Voltar");
         voltarButton.addActionListener(e -> cardLayout.show(mainPanel, "inicio"));
         botoesPanel.add(voltarButton);
@@ -44,15 +65,86 @@ public class VencidosPanel extends JPanel {
         loadVencidos();
     }
 
-    public void loadVencidos() {
-        tableModel.setRowCount(0);
-        List<Registro> registrosVencidos = estoque.verificarValidade();
+    // Baixa de todos os lotes vencidos listados: ou todas as saídas são registradas, ou nenhuma. Lotes que
+    // ainda não venceram (filtros de prazo) só saem pelo botão da própria linha.
+    private void baixaEmLote() {
+        if (table.getRowCount() == 0) {
+            JOptionPane.showMessageDialog(this, "Nenhum item listado.");
+            return;
+        }
+        int confirmacao = JOptionPane.showConfirmDialog(this, "Dar baixa em todos os " + table.getRowCount() + " itens listados?", "Baixa em lote", JOptionPane.YES_NO_OPTION);
+        if (confirmacao != JOptionPane.YES_OPTION) {
+            return;
+        }
+        List<Registro> saidas = new ArrayList<>();
+        int hoje = Datas.hoje();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (Datas.paraDia((String) table.getValueAt(row, 4)) >= hoje) {
+                continue;
+            }
+            Registro saida = saidaDaLinha(row);
+            if (saida != null) {
+                saidas.add(saida);
+            }
+        }
+        if (saidas.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Os lotes vencidos listados já não têm saldo.");
+            loadVencidos();
+            return;
+        }
+        if (estoque.novosRegistros(saidas, true)) {
+            loadVencidos();
+        }
+    }
 
-        for (Registro reg : registrosVencidos) {
-            Medicamento med = cadastro.getMedicamento(reg.getMedId());
-            String medNome = med != null ? med.getMedNome() : "Desconhecido";
-            tableModel.addRow(new Object[]{reg.getEstLocal(), reg.getMedId(), medNome, reg.getEstQnt(), reg.getEstValid(), "Baixa no Estoque"});
+    // Saída do saldo que o lote tem agora, que pode ter mudado desde que a tabela foi montada;
+    // null se o lote já foi zerado
+    private Registro saidaDaLinha(int row) {
+        int medId = (int) table.getValueAt(row, 1);
+        String local = (String) table.getValueAt(row, 0);
+        String validade = (String) table.getValueAt(row, 4);
+        int quantidade = estoque.getSaldoLote(medId, local, validade);
+        if (quantidade <= 0) {
+            return null;
         }
+        Date hoje = new Date();
+        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
+        String dataHoje = sdf.format(hoje);
+
+        return new Registro(dataHoje, medId, "Saída", local, validade, quantidade);
+    }
+
+    public void loadVencidos() {
+        int dias = 0;
+        if (prazoComboBox.getSelectedIndex() == 1) {
+            dias = 30;
+        } else if (prazoComboBox.getSelectedIndex() == 2) {
+            dias = 90;
+        }
+        int prazo = dias;
+
+        // A baixa em lote usa as linhas da tabela: só fica disponível com a tabela completa, e só no
+        // filtro dos vencidos
+        baixaLoteButton.setEnabled(false);
+        consulta.executar(linhas -> {
+            List<Registro> registrosVencidos = estoque.verificarValidade(prazo);
+
+            // Uma linha por lote (local, medicamento e validade), com o saldo que resta dele; as entradas
+            // do lote já consumidas por saídas não aparecem
+            Map<String, Registro> porLote = new LinkedHashMap<>();
+            for (Registro reg : registrosVencidos) {
+                porLote.putIfAbsent(reg.getEstLocal() + "|" + reg.getMedId() + "|" + reg.getEstValid(), reg);
+            }
+            for (Registro reg : porLote.values()) {
+                int saldo = estoque.getSaldoLote(reg.getMedId(), reg.getEstLocal(), reg.getEstValid());
+                if (saldo <= 0) {
+                    continue;
+                }
+                Medicamento med = cadastro.getMedicamento(reg.getMedId());
+                String medNome = med != null ? med.getMedNome() : "Desconhecido";
+                linhas.accept(new Object[]{reg.getEstLocal(), reg.getMedId(), medNome, saldo, reg.getEstValid(), "Baixa no Estoque"});
+            }
+        }, () -> baixaLoteButton.setEnabled(prazo == 0));
     }
 
     class ButtonRenderer extends JButton implements TableCellRenderer {
@@ -81,16 +173,10 @@ public class VencidosPanel extends JPanel {
             JButton button = new JButton(label);
             button.addActionListener(e -> {
                 fireEditingStopped();
-                int medId = (int) table.getValueAt(row, 1);
-                String local = (String) table.getValueAt(row, 0);
-                String validade = "";
-                int quantidade = (int) table.getValueAt(row, 3);
-                Date hoje = new Date();
-                SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
-                String dataHoje = sdf.format(hoje);
-
-                Registro novoRegistro = new Registro(dataHoje, medId, "Saída", local, validade, quantidade);
-                estoque.novoRegistro(novoRegistro, true);
+                Registro novoRegistro = saidaDaLinha(row);
+                if (novoRegistro != null) {
+                    estoque.novoRegistro(novoRegistro, true);
+                }
                 loadVencidos();
             });
             return button;
@@ -0,0 +1,56 @@
+package poofinal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Os IDs do cadastro são referenciados pelo histórico: uma linha inválida ignorada na carga deixa um
+// buraco, e o snapshot tem de devolver cada medicamento no mesmo ID
+class CadastroSnapshotTest {
+    @TempDir
+    Path pasta;
+
+    @Test
+    void idsComLinhaIgnoradaSobrevivemAoSnapshot() throws IOException {
+        Path csv = pasta.resolve("med_cadastro.csv");
+        Files.writeString(csv, String.join("\n",
+                "ID,Nome,Princípios Ativos,Refrigerado,Função,Risco,Dosagens,Unidade,Quantidade de Doses,Marca,Envase",
+                "1,Dipirona,Dipirona,false,Analgésico,Livre,500,mg,10,Genérico,Caixa",
+                "2,Quebrado,Quebrado,false,Teste,Livre,500,mg,muitas,Genérico,Caixa",
+                "3,Amoxicilina,Amoxicilina,false,Antibiótico,Vermelha,500,mg,21,Genérico,Caixa",
+                "4,Também quebrado,X,false,Teste,Livre,abc,mg,1,Genérico,Caixa",
+                ""));
+        CadastroMedicamentos cadastro = new CadastroMedicamentos(csv.toString());
+        cadastro.carregar();
+        assertEquals("Amoxicilina", cadastro.getMedicamento(3).getMedNome());
+
+        Path snapshot = pasta.resolve("med_cadastro.snap");
+        cadastro.salvarSnapshot(snapshot.toString());
+        CadastroMedicamentos relido = new CadastroMedicamentos(csv.toString());
+        assertTrue(relido.carregarSnapshot(snapshot.toString()));
+
+        assertEquals(2, relido.getMedicamentos().size());
+        assertEquals("Dipirona", relido.getMedicamento(1).getMedNome());
+        assertNull(relido.getMedicamento(2));
+        assertEquals("Amoxicilina", relido.getMedicamento(3).getMedNome());
+        assertEquals(3, relido.getMedicamento(3).getMedId());
+        assertEquals(3, relido.buscar("amoxicilina", IndiceBusca.Campo.NOME).get(0));
+
+        // A linha inválida do fim também continua ocupando o seu ID
+        Medicamento novo = new Medicamento("Ibuprofeno", "Ibuprofeno", false, "Anti-inflamatório", "Livre", "400", "mg", 20, "Genérico", "Caixa");
+        relido.adicionarMedicamento(novo);
+        assertEquals(5, novo.getMedId());
+
+        // E o medicamento anexado depois do snapshot é relido do diário no mesmo ID
+        CadastroMedicamentos comDiario = new CadastroMedicamentos(csv.toString());
+        assertTrue(comDiario.carregarSnapshot(snapshot.toString()));
+        assertEquals("Ibuprofeno", comDiario.getMedicamento(5).getMedNome());
+    }
+}
@@ -0,0 +1,158 @@
+package poofinal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Vários terminais registrando ao mesmo tempo (ver Estoque.registrar): no mesmo local as saídas não
+// podem passar do saldo, e em locais diferentes nenhum movimento se perde
+class EstoqueConcorrenciaTest {
+    private static final String DATA = "01/01/2025";
+    private static final String VALIDADE = "01/01/2099";
+    private static final int THREADS = 8;
+
+    @TempDir
+    Path pasta;
+
+    private CadastroMedicamentos cadastro;
+    private Estoque estoque;
+
+    @BeforeEach
+    void preparar() {
+        cadastro = new CadastroMedicamentos(pasta.resolve("med_cadastro.csv").toString());
+        cadastro.adicionarMedicamento(new Medicamento("Dipirona", "Dipirona", false, "Analgésico", "Livre", "500", "mg", 10, "Genérico", "Caixa"));
+        // Sem esperar o disco a cada registro: o que se verifica aqui são as travas, não o fsync
+        estoque = new Estoque(cadastro, pasta.resolve("hist_estoque.csv").toString());
+        estoque.setPoliticaSync(DiarioCSV.PoliticaSync.AGRUPADO, 100, 1000);
+    }
+
+    @Test
+    void saidasConcorrentesNoMesmoLocalNaoPassamDoSaldo() throws Exception {
+        assertNull(estoque.registrar(List.of(new Registro(DATA, 1, "Entrada", "A1", VALIDADE, 100))));
+
+        AtomicInteger aceitas = new AtomicInteger();
+        executarJuntas(thread -> {
+            for (int i = 0; i < 40; i++) {
+                if (estoque.registrar(List.of(new Registro(DATA, 1, "Saída", "A1", VALIDADE, 1))) == null) {
+                    aceitas.incrementAndGet();
+                }
+            }
+        });
+
+        // 320 tentativas para um saldo de 100: exatamente 100 passam
+        assertEquals(100, aceitas.get());
+        assertEquals(0, estoque.getSaldo("A1", 1));
+        assertEquals(0, estoque.getSaldoLote(1, "A1", VALIDADE));
+        assertEquals(0, (int) estoque.getEstoqueAtualPorMedicamento().getOrDefault(1, 0));
+        assertEquals(101, estoque.getEstoque().size());
+        assertIdsUnicosESequenciais(estoque.getEstoque());
+    }
+
+    @Test
+    void registrosConcorrentesEmLocaisDiferentesNaoSePerdem() throws Exception {
+        executarJuntas(thread -> {
+            for (int i = 0; i < 25; i++) {
+                String local = "T" + thread + "_" + i;
+                String erro = estoque.registrar(List.of(
+                        new Registro(DATA, 1, "Entrada", local, VALIDADE, 10),
+                        new Registro(DATA, 1, "Saída", local, VALIDADE, 4)));
+                assertNull(erro);
+            }
+        });
+
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int i = 0; i < 25; i++) {
+                assertEquals(6, estoque.getSaldo("T" + thread + "_" + i, 1));
+            }
+        }
+        assertEquals(THREADS * 25 * 6, (int) estoque.getEstoqueAtualPorMedicamento().get(1));
+        assertEquals(THREADS * 25 * 2, estoque.getEstoque().size());
+        assertIdsUnicosESequenciais(estoque.getEstoque());
+
+        // O diário recebeu cada movimento uma vez, na ordem dos IDs
+        Estoque relido = new Estoque(cadastro, pasta.resolve("hist_estoque.csv").toString());
+        relido.uploadCSV(pasta.resolve("hist_estoque.csv").toString());
+        assertEquals(estoque.getEstoqueAtualPorLocal(), relido.getEstoqueAtualPorLocal());
+        assertEquals(estoque.getEstoque().size(), relido.getEstoque().size());
+    }
+
+    // Snapshots e consultas no meio dos registros: nenhum espera pelo outro para sempre, e o snapshot
+    // gravado por último corresponde ao diário
+    @Test
+    void snapshotsEConsultasDuranteRegistros() throws Exception {
+        Path snapshot = pasta.resolve("hist_estoque.snap");
+        executarJuntas(thread -> {
+            for (int i = 0; i < 25; i++) {
+                if (thread == 0) {
+                    estoque.salvarSnapshot(snapshot.toString());
+                } else if (thread == 1) {
+                    estoque.verificarValidade(30);
+                    estoque.getEstoqueAtualPorLocal();
+                } else {
+                    String local = "T" + thread + "_" + i;
+                    assertNull(estoque.registrar(List.of(new Registro(DATA, 1, "Entrada", local, VALIDADE, 3))));
+                    estoque.removerRegistroVencido(1, local, VALIDADE);
+                }
+            }
+        });
+        assertEquals(0, (int) estoque.getEstoqueAtualPorMedicamento().getOrDefault(1, 0));
+
+        estoque.salvarSnapshot(snapshot.toString());
+        Estoque relido = new Estoque(cadastro, pasta.resolve("hist_estoque.csv").toString());
+        assertTrue(relido.carregarSnapshot(snapshot.toString()));
+        assertEquals(estoque.getEstoqueAtualPorLocal(), relido.getEstoqueAtualPorLocal());
+    }
+
+    private interface Tarefa {
+        void executar(int thread) throws Exception;
+    }
+
+    // Todas as threads começam juntas, para que os registros de fato se cruzem
+    private static void executarJuntas(Tarefa tarefa) throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch largada = new CountDownLatch(1);
+            List<Future<?>> pendentes = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                pendentes.add(threads.submit(() -> {
+                    largada.await();
+                    tarefa.executar(thread);
+                    return null;
+                }));
+            }
+            largada.countDown();
+            for (Future<?> pendente : pendentes) {
+                pendente.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private static void assertIdsUnicosESequenciais(List<Registro> registros) {
+        Set<Integer> ids = new HashSet<>();
+        for (Registro registro : registros) {
+            assertTrue(ids.add(registro.getEstId()), "ID repetido: " + registro.getEstId());
+        }
+        for (int id = 1; id <= registros.size(); id++) {
+            assertTrue(ids.contains(id), "ID faltando: " + id);
+        }
+    }
+}
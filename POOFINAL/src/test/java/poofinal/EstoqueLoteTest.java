@@ -0,0 +1,118 @@
+package poofinal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Lotes de movimentos registrados todos ou nenhum: um lote recusado no meio não deixa nenhuma linha no
+// diário nem muda os saldos
+class EstoqueLoteTest {
+    private static final String VALIDADE = "01/01/2099";
+
+    @TempDir
+    Path pasta;
+
+    private CadastroMedicamentos cadastro;
+    private Path caminhoDiario;
+    private Estoque estoque;
+
+    @BeforeEach
+    void preparar() {
+        cadastro = new CadastroMedicamentos(pasta.resolve("med_cadastro.csv").toString());
+        cadastro.adicionarMedicamento(new Medicamento("Dipirona", "Dipirona", false, "Analgésico", "Livre", "500", "mg", 10, "Genérico", "Caixa"));
+        cadastro.adicionarMedicamento(new Medicamento("Amoxicilina", "Amoxicilina", false, "Antibiótico", "Vermelha", "500", "mg", 21, "Genérico", "Caixa"));
+        caminhoDiario = pasta.resolve("hist_estoque.csv");
+        estoque = new Estoque(cadastro, caminhoDiario.toString());
+        assertNull(estoque.registrar(List.of(new Registro("01/01/2025", 1, "Entrada", "A1", VALIDADE, 10))));
+    }
+
+    @Test
+    void loteRecusadoNoMeioNaoGravaNada() throws IOException {
+        byte[] diarioAntes = Files.readAllBytes(caminhoDiario);
+
+        // O terceiro movimento tira mais do que as entradas anteriores do próprio lote deixaram
+        String erro = estoque.registrar(List.of(
+                new Registro("02/01/2025", 1, "Saída", "A1", VALIDADE, 4),
+                new Registro("02/01/2025", 2, "Entrada", "B1", VALIDADE, 5),
+                new Registro("03/01/2025", 1, "Saída", "A1", VALIDADE, 7),
+                new Registro("03/01/2025", 2, "Saída", "B1", VALIDADE, 1)));
+
+        assertNotNull(erro);
+        assertArrayEquals(diarioAntes, Files.readAllBytes(caminhoDiario));
+        assertEquals(10, estoque.getSaldo("A1", 1));
+        assertEquals(0, estoque.getSaldo("B1", 2));
+        assertEquals(1, estoque.getEstoque().size());
+
+        // Os IDs do lote recusado não foram gastos
+        Registro seguinte = new Registro("04/01/2025", 1, "Saída", "A1", VALIDADE, 3);
+        assertNull(estoque.registrar(List.of(seguinte)));
+        assertEquals(2, seguinte.getEstId());
+    }
+
+    @Test
+    void falhaAoGravarODiarioNaoMudaOEstoque() throws IOException {
+        // Um diretório no lugar do arquivo: abrir o diário para anexar falha
+        Path semDiario = pasta.resolve("sem_diario.csv");
+        Files.createDirectory(semDiario);
+        Estoque semGravacao = new Estoque(cadastro, semDiario.toString());
+
+        String erro = semGravacao.registrar(List.of(
+                new Registro("01/01/2025", 1, "Entrada", "A1", VALIDADE, 10),
+                new Registro("02/01/2025", 1, "Saída", "A1", VALIDADE, 3)));
+
+        assertNotNull(erro);
+        assertEquals(0, semGravacao.getSaldo("A1", 1));
+        assertEquals(0, semGravacao.getEstoque().size());
+    }
+
+    @Test
+    void saidaConsomeEntradaAnteriorDoMesmoLote() {
+        // Fora de ordem: o lote é validado em ordem de data, e a saída vem depois da entrada no local novo
+        Registro saida = new Registro("06/01/2025", 2, "Saída", "C1", VALIDADE, 8);
+        Registro entrada = new Registro("05/01/2025", 2, "Entrada", "C1", VALIDADE, 8);
+        assertNull(estoque.registrar(List.of(saida, entrada)));
+
+        assertEquals(0, estoque.getSaldo("C1", 2));
+        assertEquals(2, entrada.getEstId());
+        assertEquals(3, saida.getEstId());
+    }
+
+    @Test
+    void loteEntraNoDiarioDeUmaVezNaOrdemDosIds() throws IOException {
+        long linhasAntes = Files.readAllLines(caminhoDiario).size();
+        assertNull(estoque.registrar(List.of(
+                new Registro("03/01/2025", 2, "Saída", "B1", VALIDADE, 2),
+                new Registro("02/01/2025", 2, "Entrada", "B1", VALIDADE, 5),
+                new Registro("02/01/2025", 1, "Saída", "A1", VALIDADE, 1))));
+
+        List<String> linhas = Files.readAllLines(caminhoDiario);
+        assertEquals(linhasAntes + 3, linhas.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(String.valueOf(2 + i), linhas.get(linhas.size() - 3 + i).split(",")[0].replace("\"", ""));
+        }
+    }
+
+    @Test
+    void loteAceitoEntraInteiroNoDiario() {
+        assertNull(estoque.registrar(List.of(
+                new Registro("02/01/2025", 1, "Saída", "A1", VALIDADE, 4),
+                new Registro("02/01/2025", 2, "Entrada", "B1", VALIDADE, 5),
+                new Registro("03/01/2025", 2, "Saída", "B1", VALIDADE, 1))));
+
+        Estoque relido = new Estoque(cadastro, caminhoDiario.toString());
+        relido.uploadCSV(caminhoDiario.toString());
+        assertEquals(4, relido.getEstoque().size());
+        assertEquals(6, relido.getSaldo("A1", 1));
+        assertEquals(4, relido.getSaldo("B1", 2));
+    }
+}
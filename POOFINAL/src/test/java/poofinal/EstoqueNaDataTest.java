@@ -0,0 +1,108 @@
+package poofinal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Estoque em uma data pelos checkpoints (ver SaldoPorData): com histórico suficiente para vários
+// checkpoints, cada data tem de dar o mesmo que somar os movimentos até ela
+class EstoqueNaDataTest {
+    private static final int DIAS = 200;
+    private static final int LOCAIS = 200;
+    private static final int MEDICAMENTOS = 3;
+    private static final int INICIO = Datas.paraDia("01/01/2024");
+
+    @TempDir
+    Path pasta;
+
+    // Movimentos esperados, para a soma ingênua: dia, medicamento e quantidade com sinal; as entradas do
+    // lote vencido têm um quarto campo, para saírem da soma quando o lote é removido
+    private final List<int[]> movimentos = new ArrayList<>();
+
+    @Test
+    void checkpointsBatemComASomaDosMovimentos() throws IOException {
+        CadastroMedicamentos cadastro = new CadastroMedicamentos(pasta.resolve("med_cadastro.csv").toString());
+        for (int i = 1; i <= MEDICAMENTOS; i++) {
+            cadastro.adicionarMedicamento(new Medicamento("Medicamento " + i, "Princípio " + i, false, "Teste", "Livre", "100", "mg", 10, "Marca", "Caixa"));
+        }
+        Path csv = pasta.resolve("historico.csv");
+        Files.write(csv, gerarHistorico());
+        Path caminhoDiario = pasta.resolve("hist_estoque.csv");
+        Estoque estoque = new Estoque(cadastro, caminhoDiario.toString());
+        estoque.uploadCSV(csv.toString());
+        assertDatas(estoque);
+
+        // Um local novo pode receber um movimento anterior aos dos outros: entra nos checkpoints seguintes
+        assertNull(estoque.registrar(List.of(new Registro(data(5), 2, "Entrada", "NOVO", "01/01/2099", 40))));
+        movimentos.add(new int[]{5, 2, 40});
+        assertDatas(estoque);
+
+        // A remoção do lote vencido sai de todos os checkpoints posteriores às suas entradas
+        estoque.removerRegistroVencido(1, "V1", "01/01/2020");
+        movimentos.removeIf(m -> m.length > 3);
+        assertDatas(estoque);
+    }
+
+    // Um dia de entradas em todos os locais e depois uma saída por local por dia; o lote vencido de V1
+    // recebe uma entrada no começo e outra no fim do período
+    private List<String> gerarHistorico() {
+        List<String> linhas = new ArrayList<>();
+        linhas.add("ID,Data,ID Medicamento,Natureza,Local,Validade,Quantidade");
+        int id = 0;
+        for (int dia = 0; dia < DIAS; dia++) {
+            if (dia == 10 || dia == 150) {
+                linhas.add(++id + "," + data(dia) + ",1,Entrada,V1,01/01/2020,7");
+                movimentos.add(new int[]{dia, 1, 7, 0});
+            }
+            for (int local = 0; local < LOCAIS; local++) {
+                int medId = 1 + local % MEDICAMENTOS;
+                String natureza = dia == 0 ? "Entrada" : "Saída";
+                int quantidade = dia == 0 ? 1000 : 1 + local % 3;
+                linhas.add(++id + "," + data(dia) + "," + medId + "," + natureza + ",L" + local + ",01/01/2099," + quantidade);
+                movimentos.add(new int[]{dia, medId, dia == 0 ? quantidade : -quantidade});
+            }
+        }
+        return linhas;
+    }
+
+    private void assertDatas(Estoque estoque) {
+        for (int dia = -1; dia <= DIAS; dia += 7) {
+            assertEquals(somaAte(dia), semZeros(estoque.getEstoqueNaData(data(dia), null)), data(dia));
+        }
+        assertEquals(somaAte(DIAS), semZeros(estoque.getEstoqueAtualPorMedicamento()));
+        // Com filtro de medicamentos
+        Map<Integer, Integer> soma = somaAte(120);
+        soma.keySet().retainAll(List.of(2));
+        assertEquals(soma, semZeros(estoque.getEstoqueNaData(data(120), List.of(2))));
+    }
+
+    private Map<Integer, Integer> somaAte(int dia) {
+        Map<Integer, Integer> soma = new HashMap<>();
+        for (int[] movimento : movimentos) {
+            if (movimento[0] <= dia) {
+                soma.merge(movimento[1], movimento[2], Integer::sum);
+            }
+        }
+        return semZeros(soma);
+    }
+
+    private static Map<Integer, Integer> semZeros(Map<Integer, Integer> saldos) {
+        Map<Integer, Integer> semZeros = new HashMap<>(saldos);
+        semZeros.values().removeIf(quantidade -> quantidade == 0);
+        return semZeros;
+    }
+
+    private static String data(int dia) {
+        return Datas.formatar(INICIO + dia);
+    }
+}
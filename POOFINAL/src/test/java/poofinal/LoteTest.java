@@ -0,0 +1,36 @@
+package poofinal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoteTest {
+    @Test
+    void equalsConcordaComCompareTo() {
+        Lote lote = new Lote(1, "A1", "01/02/2025");
+        Lote mesmaValidade = new Lote(1, "A1", "1/2/2025");
+
+        assertEquals(0, lote.compareTo(mesmaValidade));
+        assertEquals(lote, mesmaValidade);
+        assertEquals(lote.hashCode(), mesmaValidade.hashCode());
+        assertNotEquals(lote, new Lote(2, "A1", "01/02/2025"));
+        assertNotEquals(lote, new Lote(1, "A2", "01/02/2025"));
+        assertNotEquals(lote, new Lote(1, "A1", "02/02/2025"));
+
+        // Os dois conjuntos veem o mesmo lote
+        Set<Lote> porHash = new HashSet<>();
+        Set<Lote> ordenados = new TreeSet<>();
+        porHash.add(lote);
+        ordenados.add(lote);
+        assertTrue(porHash.contains(mesmaValidade));
+        assertTrue(ordenados.contains(mesmaValidade));
+        assertTrue(porHash.remove(mesmaValidade));
+        assertTrue(ordenados.remove(mesmaValidade));
+    }
+}
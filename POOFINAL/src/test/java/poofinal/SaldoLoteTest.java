@@ -0,0 +1,39 @@
+package poofinal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// O saldo de cada lote (local, medicamento e validade) tem de bater com o saldoDetalhado
+class SaldoLoteTest {
+    @TempDir
+    Path pasta;
+
+    @Test
+    void saidaSaiDoLoteDaPropriaValidade() throws IOException {
+        CadastroMedicamentos cadastro = new CadastroMedicamentos(pasta.resolve("med_cadastro.csv").toString());
+        cadastro.adicionarMedicamento(new Medicamento("Dipirona", "Dipirona", false, "Analgésico", "Livre", "500", "mg", 10, "Genérico", "Caixa"));
+        Estoque estoque = new Estoque(cadastro, pasta.resolve("hist_estoque.csv").toString());
+
+        // Dois lotes no mesmo local, como históricos anteriores à regra de um lote por local (a carga
+        // não a aplica); a saída é do mais antigo, que não é o da última entrada
+        Path csv = pasta.resolve("historico.csv");
+        Files.writeString(csv, String.join("\n",
+                "ID,Data,ID Medicamento,Natureza,Local,Validade,Quantidade",
+                "1,01/01/2025,1,Entrada,A1,01/06/2098,10",
+                "2,02/01/2025,1,Entrada,A1,01/06/2099,5",
+                "3,03/01/2025,1,Saída,A1,01/06/2098,3",
+                ""));
+        estoque.uploadCSV(csv.toString());
+
+        assertEquals(7, estoque.getSaldoLote(1, "A1", "01/06/2098"));
+        assertEquals(5, estoque.getSaldoLote(1, "A1", "01/06/2099"));
+        assertEquals(7, (int) estoque.getEstoqueAtualDetalhado().get("A1").get(1).get("01/06/2098"));
+        assertEquals(5, (int) estoque.getEstoqueAtualDetalhado().get("A1").get(1).get("01/06/2099"));
+    }
+}
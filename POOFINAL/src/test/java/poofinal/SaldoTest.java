@@ -0,0 +1,88 @@
+package poofinal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Saldos mantidos a cada registro (ver Estoque.atualizarSaldos): por medicamento, por local e por
+// validade, sem percorrer o histórico, e iguais aos de uma releitura do diário
+class SaldoTest {
+    private static final String VALIDADE = "01/01/2099";
+
+    @TempDir
+    Path pasta;
+
+    private CadastroMedicamentos cadastro;
+    private Path caminhoDiario;
+    private Estoque estoque;
+
+    @BeforeEach
+    void preparar() {
+        cadastro = new CadastroMedicamentos(pasta.resolve("med_cadastro.csv").toString());
+        cadastro.adicionarMedicamento(new Medicamento("Dipirona", "Dipirona", false, "Analgésico", "Livre", "500", "mg", 10, "Genérico", "Caixa"));
+        cadastro.adicionarMedicamento(new Medicamento("Amoxicilina", "Amoxicilina", false, "Antibiótico", "Vermelha", "500", "mg", 21, "Genérico", "Caixa"));
+        caminhoDiario = pasta.resolve("hist_estoque.csv");
+        estoque = new Estoque(cadastro, caminhoDiario.toString());
+    }
+
+    @Test
+    void saldosAcompanhamOsMovimentos() {
+        assertNull(estoque.registrar(List.of(
+                new Registro("01/01/2025", 1, "Entrada", "A1", VALIDADE, 10),
+                new Registro("01/01/2025", 1, "Entrada", "A2", "01/06/2098", 7),
+                new Registro("02/01/2025", 2, "Entrada", "B1", VALIDADE, 5),
+                new Registro("03/01/2025", 1, "Saída", "A1", VALIDADE, 4),
+                new Registro("04/01/2025", 2, "Saída", "B1", VALIDADE, 5))));
+
+        assertEquals(6, estoque.getSaldo("A1", 1));
+        assertEquals(7, estoque.getSaldo("A2", 1));
+        assertEquals(0, estoque.getSaldo("B1", 2));
+        assertEquals(0, estoque.getSaldo("SEM_MOVIMENTO", 1));
+        assertEquals(13, (int) estoque.getEstoqueAtualPorMedicamento().get(1));
+        assertEquals(0, (int) estoque.getEstoqueAtualPorMedicamento().get(2));
+        assertEquals(Map.of(1, 6), estoque.getEstoqueAtualPorLocal().get("A1"));
+        assertEquals(7, (int) estoque.getEstoqueAtualDetalhado().get("A2").get(1).get("01/06/2098"));
+
+        assertEquals(estoque.getEstoqueAtualPorLocal(), relido().getEstoqueAtualPorLocal());
+        assertEquals(estoque.getEstoqueAtualPorMedicamento(), relido().getEstoqueAtualPorMedicamento());
+    }
+
+    @Test
+    void saidaAcimaDoSaldoERecusada() {
+        assertNull(estoque.registrar(List.of(new Registro("01/01/2025", 1, "Entrada", "A1", VALIDADE, 3))));
+
+        assertNotNull(estoque.registrar(List.of(new Registro("02/01/2025", 1, "Saída", "A1", VALIDADE, 4))));
+        assertNotNull(estoque.registrar(List.of(new Registro("02/01/2025", 2, "Saída", "A1", VALIDADE, 1))));
+        assertEquals(3, estoque.getSaldo("A1", 1));
+        assertEquals(3, (int) estoque.getEstoqueAtualPorMedicamento().get(1));
+        assertEquals(1, estoque.getEstoque().size());
+    }
+
+    @Test
+    void remocaoDoLoteDesfazOsSaldos() {
+        assertNull(estoque.registrar(List.of(
+                new Registro("01/01/2025", 1, "Entrada", "V1", "01/01/2020", 8),
+                new Registro("01/01/2025", 1, "Entrada", "A1", VALIDADE, 2))));
+
+        estoque.removerRegistroVencido(1, "V1", "01/01/2020");
+
+        assertEquals(0, estoque.getSaldo("V1", 1));
+        assertEquals(2, (int) estoque.getEstoqueAtualPorMedicamento().get(1));
+        assertEquals(estoque.getEstoqueAtualPorMedicamento(), relido().getEstoqueAtualPorMedicamento());
+        assertEquals(0, relido().getSaldo("V1", 1));
+    }
+
+    private Estoque relido() {
+        Estoque relido = new Estoque(cadastro, caminhoDiario.toString());
+        relido.uploadCSV(caminhoDiario.toString());
+        return relido;
+    }
+}
@@ -0,0 +1,166 @@
+package poofinal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Reinício pelo snapshot mais as linhas anexadas ao diário depois dele (ver Estoque.carregar): o estado
+// tem de ser o mesmo de uma releitura completa do CSV
+class SnapshotTest {
+    private static final int MEDICAMENTOS = 3;
+    private static final int LOCAIS = 12;
+
+    @TempDir
+    Path pasta;
+
+    private CadastroMedicamentos cadastro;
+    private Path caminhoDiario;
+    private Path caminhoSnapshot;
+    private Estoque estoque;
+
+    @BeforeEach
+    void preparar() {
+        cadastro = new CadastroMedicamentos(pasta.resolve("med_cadastro.csv").toString());
+        for (int i = 1; i <= MEDICAMENTOS; i++) {
+            cadastro.adicionarMedicamento(new Medicamento("Medicamento " + i, "Princípio " + i, false, "Teste", "Livre", "100", "mg", 10, "Marca", "Caixa"));
+        }
+        caminhoDiario = pasta.resolve("hist_estoque.csv");
+        caminhoSnapshot = pasta.resolve("hist_estoque.snap");
+        estoque = new Estoque(cadastro, caminhoDiario.toString());
+    }
+
+    @Test
+    void snapshotMaisDiarioIgualARecargaCompleta() {
+        registrarMes(1);
+        // Um lote já vencido, para que a remoção depois do snapshot também seja relida do diário
+        assertNull(estoque.registrar(List.of(new Registro("10/01/2025", 1, "Entrada", "V1", "01/01/2020", 8))));
+        estoque.salvarSnapshot(caminhoSnapshot.toString());
+
+        registrarMes(2);
+        estoque.removerRegistroVencido(1, "V1", "01/01/2020");
+
+        Estoque pelaSnapshot = new Estoque(cadastro, caminhoDiario.toString());
+        assertTrue(pelaSnapshot.carregarSnapshot(caminhoSnapshot.toString()));
+        Estoque peloCsv = new Estoque(cadastro, caminhoDiario.toString());
+        peloCsv.uploadCSV(caminhoDiario.toString());
+
+        assertMesmoEstado(peloCsv, pelaSnapshot);
+        assertMesmoEstado(estoque, pelaSnapshot);
+        assertEquals(0, pelaSnapshot.getSaldo("V1", 1));
+        assertEquals(LOCAIS / MEDICAMENTOS, pelaSnapshot.getLotesPorValidade(1).size());
+
+        // O próximo ID continua de onde o diário parou
+        Registro seguinte = new Registro("01/03/2025", 2, "Entrada", "NOVO", "01/01/2099", 1);
+        Registro seguinteCsv = new Registro("01/03/2025", 2, "Entrada", "NOVO", "01/01/2099", 1);
+        assertNull(pelaSnapshot.registrar(List.of(seguinte)));
+        assertNull(peloCsv.registrar(List.of(seguinteCsv)));
+        assertEquals(seguinteCsv.getEstId(), seguinte.getEstId());
+    }
+
+    @Test
+    void snapshotCorrompidoNaoECarregado() throws IOException {
+        registrarMes(1);
+        estoque.salvarSnapshot(caminhoSnapshot.toString());
+
+        try (RandomAccessFile arquivo = new RandomAccessFile(caminhoSnapshot.toFile(), "rw")) {
+            long meio = Files.size(caminhoSnapshot) / 2;
+            arquivo.seek(meio);
+            int valor = arquivo.read();
+            arquivo.seek(meio);
+            arquivo.write(valor ^ 0xFF);
+        }
+
+        Estoque recarregado = new Estoque(cadastro, caminhoDiario.toString());
+        assertFalse(recarregado.carregarSnapshot(caminhoSnapshot.toString()));
+        recarregado.carregar();
+        assertMesmoEstado(estoque, recarregado);
+    }
+
+    // Os movimentos apontam para os IDs do cadastro: depois de reiniciar pelos dois snapshots, com uma
+    // linha inválida no cadastro, cada movimento continua no mesmo medicamento
+    @Test
+    void reinicioPelosSnapshotsMantemOsMedicamentosDosMovimentos() throws IOException {
+        Path csvCadastro = pasta.resolve("cadastro_com_buraco.csv");
+        Files.writeString(csvCadastro, String.join("\n",
+                "ID,Nome,Princípios Ativos,Refrigerado,Função,Risco,Dosagens,Unidade,Quantidade de Doses,Marca,Envase",
+                "1,Dipirona,Dipirona,false,Analgésico,Livre,500,mg,10,Genérico,Caixa",
+                "2,Quebrado,Quebrado,false,Teste,Livre,500,mg,muitas,Genérico,Caixa",
+                "3,Amoxicilina,Amoxicilina,false,Antibiótico,Vermelha,500,mg,21,Genérico,Caixa",
+                ""));
+        CadastroMedicamentos comBuraco = new CadastroMedicamentos(csvCadastro.toString());
+        comBuraco.carregar();
+        Path diario = pasta.resolve("hist_buraco.csv");
+        Estoque original = new Estoque(comBuraco, diario.toString());
+        assertNull(original.registrar(List.of(new Registro("01/01/2025", 3, "Entrada", "A1", "01/01/2099", 6))));
+        comBuraco.salvarSnapshot(pasta.resolve("cadastro_com_buraco.snap").toString());
+        original.salvarSnapshot(pasta.resolve("hist_buraco.snap").toString());
+
+        CadastroMedicamentos cadastroRelido = new CadastroMedicamentos(csvCadastro.toString());
+        assertTrue(cadastroRelido.carregarSnapshot(pasta.resolve("cadastro_com_buraco.snap").toString()));
+        Estoque relido = new Estoque(cadastroRelido, diario.toString());
+        assertTrue(relido.carregarSnapshot(pasta.resolve("hist_buraco.snap").toString()));
+
+        Registro movimento = relido.getEstoque().get(0);
+        assertEquals(3, movimento.getMedId());
+        assertEquals("Amoxicilina", cadastroRelido.getMedicamento(movimento.getMedId()).getMedNome());
+        assertEquals(6, relido.getSaldo("A1", 3));
+    }
+
+    // Entradas no primeiro dia do mês e saídas nos dias seguintes, em todos os locais
+    private void registrarMes(int mes) {
+        for (int local = 0; local < LOCAIS; local++) {
+            int medId = 1 + local % MEDICAMENTOS;
+            String nome = "L" + local;
+            List<Registro> movimentos = new ArrayList<>();
+            movimentos.add(new Registro(String.format("01/%02d/2025", mes), medId, "Entrada", nome, "01/01/2099", 20 + local));
+            for (int dia = 2; dia <= 5; dia++) {
+                movimentos.add(new Registro(String.format("%02d/%02d/2025", dia, mes), medId, "Saída", nome, "01/01/2099", 1 + dia % 3));
+            }
+            assertNull(estoque.registrar(movimentos));
+        }
+    }
+
+    private static void assertMesmoEstado(Estoque esperado, Estoque obtido) {
+        assertEquals(linhas(esperado.getEstoque()), linhas(obtido.getEstoque()));
+        assertEquals(esperado.getEstoqueAtualPorMedicamento(), obtido.getEstoqueAtualPorMedicamento());
+        assertEquals(esperado.getEstoqueAtualPorLocal(), obtido.getEstoqueAtualPorLocal());
+        assertEquals(esperado.getEstoqueAtualDetalhado(), obtido.getEstoqueAtualDetalhado());
+        assertEquals(esperado.getValidadePorLocal(), obtido.getValidadePorLocal());
+        for (String data : new String[]{"03/01/2025", "31/01/2025", "03/02/2025", "28/02/2025"}) {
+            assertEquals(esperado.getEstoqueNaData(data, null), obtido.getEstoqueNaData(data, null), data);
+        }
+        for (int medId = 1; medId <= MEDICAMENTOS; medId++) {
+            assertEquals(lotes(esperado.getLotesPorValidade(medId)), lotes(obtido.getLotesPorValidade(medId)));
+        }
+    }
+
+    private static List<String> lotes(Collection<Lote> lotes) {
+        List<String> linhas = new ArrayList<>(lotes.size());
+        for (Lote lote : lotes) {
+            linhas.add(lote.getLocal() + ";" + lote.getMedId() + ";" + lote.getValidade());
+        }
+        return linhas;
+    }
+
+    private static List<String> linhas(List<Registro> registros) {
+        List<String> linhas = new ArrayList<>(registros.size());
+        for (Registro r : registros) {
+            linhas.add(r.getEstId() + ";" + r.getEstData() + ";" + r.getMedId() + ";" + r.getEstNat() + ";"
+                    + r.getEstLocal() + ";" + r.getEstValid() + ";" + r.getEstQnt());
+        }
+        return linhas;
+    }
+}
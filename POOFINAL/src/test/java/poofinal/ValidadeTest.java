@@ -0,0 +1,90 @@
+package poofinal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// O índice de validades só tem lotes com saldo (ver Estoque.indexarValidade): um lote vencido que acabou
+// some dos vencidos mesmo que o local tenha outro lote do medicamento, e volta se receber outra entrada
+class ValidadeTest {
+    private static final String VENCIDA = "01/01/2020";
+
+    @TempDir
+    Path pasta;
+
+    private Estoque estoque;
+    private Path caminhoDiario;
+    private CadastroMedicamentos cadastro;
+
+    @BeforeEach
+    void preparar() {
+        cadastro = new CadastroMedicamentos(pasta.resolve("med_cadastro.csv").toString());
+        cadastro.adicionarMedicamento(new Medicamento("Dipirona", "Dipirona", false, "Analgésico", "Livre", "500", "mg", 10, "Genérico", "Caixa"));
+        caminhoDiario = pasta.resolve("hist_estoque.csv");
+        estoque = new Estoque(cadastro, caminhoDiario.toString());
+    }
+
+    @Test
+    void loteVencidoQueAcabouSaiDosVencidos() {
+        assertNull(estoque.registrar(List.of(new Registro("01/01/2025", 1, "Entrada", "A1", VENCIDA, 5))));
+        assertEquals(List.of("A1;" + VENCIDA), lotes(estoque.verificarValidade()));
+        assertTrue(estoque.existemVencidos());
+
+        // O lote vencido acaba, e o local recebe um lote novo do mesmo medicamento
+        assertNull(estoque.registrar(List.of(
+                new Registro("02/01/2025", 1, "Saída", "A1", VENCIDA, 5),
+                new Registro("03/01/2025", 1, "Entrada", "A1", "01/01/2099", 10))));
+        assertEquals(10, estoque.getSaldo("A1", 1));
+        assertTrue(estoque.verificarValidade().isEmpty());
+        assertFalse(estoque.existemVencidos());
+    }
+
+    @Test
+    void loteVoltaAoIndiceComNovaEntrada() {
+        assertNull(estoque.registrar(List.of(
+                new Registro("01/01/2025", 1, "Entrada", "B1", VENCIDA, 3),
+                new Registro("02/01/2025", 1, "Saída", "B1", VENCIDA, 3))));
+        assertFalse(estoque.existemVencidos());
+
+        assertNull(estoque.registrar(List.of(new Registro("03/01/2025", 1, "Entrada", "B1", VENCIDA, 2))));
+        assertTrue(estoque.existemVencidos());
+        // As duas entradas do lote, em ordem
+        assertEquals(List.of("B1;" + VENCIDA, "B1;" + VENCIDA), lotes(estoque.verificarValidade()));
+
+        // A remoção do lote tira ele do índice, e a releitura do diário chega ao mesmo estado
+        estoque.removerRegistroVencido(1, "B1", VENCIDA);
+        assertFalse(estoque.existemVencidos());
+        Estoque relido = new Estoque(cadastro, caminhoDiario.toString());
+        relido.uploadCSV(caminhoDiario.toString());
+        assertFalse(relido.existemVencidos());
+    }
+
+    @Test
+    void prazoIncluiLotesQueVencemAte() {
+        String emDezDias = Datas.formatar(Datas.hoje() + 10);
+        assertNull(estoque.registrar(List.of(
+                new Registro("01/01/2025", 1, "Entrada", "C1", emDezDias, 4),
+                new Registro("01/01/2025", 1, "Entrada", "C2", "01/01/2099", 4))));
+
+        assertTrue(estoque.verificarValidade(0).isEmpty());
+        assertFalse(estoque.existemVencidos());
+        assertEquals(List.of("C1;" + emDezDias), lotes(estoque.verificarValidade(30)));
+    }
+
+    private static List<String> lotes(List<Registro> registros) {
+        List<String> linhas = new ArrayList<>(registros.size());
+        for (Registro r : registros) {
+            linhas.add(r.getEstLocal() + ";" + r.getEstValid());
+        }
+        return linhas;
+    }
+}
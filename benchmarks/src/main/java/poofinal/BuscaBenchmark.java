@@ -0,0 +1,74 @@
+package poofinal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Busca no cadastro pelo índice de trios e, para comparação, a varredura com toLowerCase e contains
+// que os painéis faziam antes. A consulta "Medicamento 4242" tem poucos resultados, "Principio 12"
+// algumas centenas e "Funcao 7" milhares.
+// Uso: java -jar benchmarks/target/benchmarks.jar BuscaBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BuscaBenchmark {
+    @Param({"100000"})
+    public int medicamentos;
+
+    @Param({"Medicamento 4242", "Principio 12", "Funcao 7"})
+    public String consulta;
+
+    private Path pasta;
+    private CadastroMedicamentos cadastro;
+
+    @Setup(Level.Trial)
+    public void carregar() throws IOException {
+        pasta = Files.createTempDirectory("busca-bench");
+        cadastro = new CadastroMedicamentos(pasta.resolve("med_diario.csv").toString());
+        cadastro.uploadCSV(DadosSinteticos.gerarCadastro(pasta, medicamentos).toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void apagar() throws IOException {
+        DadosSinteticos.apagar(pasta);
+    }
+
+    @Benchmark
+    public ListaInt buscarTodos() {
+        return cadastro.buscar(consulta, IndiceBusca.Campo.values());
+    }
+
+    @Benchmark
+    public List<Integer> varrerTodos() {
+        String texto = consulta.toLowerCase();
+        List<Integer> ids = new ArrayList<>();
+        for (Medicamento med : cadastro.getMedicamentos()) {
+            if (med.getMedNome().toLowerCase().contains(texto)
+                    || med.getPrincAtvsAsString().toLowerCase().contains(texto)
+                    || med.getMedFunc().toLowerCase().contains(texto)) {
+                ids.add(med.getMedId());
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,80 @@
+package poofinal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Carga completa do histórico sintético a partir do CSV e a partir do snapshot binário
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CargaBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int linhas;
+
+    @Param({"2000"})
+    public int locais;
+
+    @Param({"500"})
+    public int medicamentos;
+
+    @Param({"false", "true"})
+    public boolean colunar;
+
+    private Path pasta;
+    private CadastroMedicamentos cadastro;
+    private String historico;
+    private String snapshot;
+
+    @Setup(Level.Trial)
+    public void gerar() throws IOException {
+        pasta = Files.createTempDirectory("carga-bench");
+        cadastro = new CadastroMedicamentos(pasta.resolve("med_diario.csv").toString());
+        cadastro.uploadCSV(DadosSinteticos.gerarCadastro(pasta, medicamentos).toString());
+        historico = DadosSinteticos.gerarHistorico(pasta, linhas, locais, medicamentos).toString();
+        // O snapshot é validado contra o diário de quem o carrega, então o próprio CSV gerado faz esse papel
+        snapshot = pasta.resolve("hist.snap").toString();
+        Estoque estoque = new Estoque(cadastro, historico, colunar);
+        estoque.uploadCSV(historico);
+        estoque.salvarSnapshot(snapshot);
+    }
+
+    @TearDown(Level.Trial)
+    public void apagar() throws IOException {
+        DadosSinteticos.apagar(pasta);
+    }
+
+    @Benchmark
+    public Estoque uploadCSV() {
+        Estoque estoque = new Estoque(cadastro, pasta.resolve("hist_diario.csv").toString(), colunar);
+        estoque.uploadCSV(historico);
+        return estoque;
+    }
+
+    @Benchmark
+    public Estoque carregarSnapshot() {
+        Estoque estoque = new Estoque(cadastro, historico, colunar);
+        if (!estoque.carregarSnapshot(snapshot)) {
+            throw new IllegalStateException("snapshot recusado: " + snapshot);
+        }
+        return estoque;
+    }
+}
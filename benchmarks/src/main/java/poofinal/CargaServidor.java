@@ -0,0 +1,200 @@
+package poofinal;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Teste de carga do ServidorEstoque: sobe o servidor com um histórico sintético grande e dispara
+// requisições de vários clientes ao mesmo tempo, cada um em uma thread virtual, com uma mistura de
+// consultas e registros. Mede requisições por segundo e latências (p50, p99, máximo) por rota.
+// Não é um benchmark JMH: o que interessa é a distribuição das latências, não a média.
+// Uso: java -cp benchmarks/target/benchmarks.jar poofinal.CargaServidor [linhas] [clientes] [segundos]
+public class CargaServidor {
+    private static final int LOCAIS = 2000;
+    private static final int MEDICAMENTOS = 500;
+    private static final int AQUECIMENTO_SEGUNDOS = 5;
+    private static final String[] ROTAS = {"/estoque/locais?local", "/estoque", "/historico", "/vencidos", "POST /registros"};
+    // Em %, na ordem de ROTAS
+    private static final int[] PESOS = {45, 15, 15, 10, 15};
+
+    private final HttpClient cliente;
+    private final String base;
+
+    private CargaServidor(int porta) {
+        this.cliente = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        this.base = "http://127.0.0.1:" + porta;
+    }
+
+    // Latências em nanossegundos de um cliente, separadas por rota
+    private static final class Medidas {
+        final long[][] latencias = new long[ROTAS.length][1024];
+        final int[] quantidades = new int[ROTAS.length];
+        int erros;
+
+        void adicionar(int rota, long nanos) {
+            if (quantidades[rota] == latencias[rota].length) {
+                latencias[rota] = Arrays.copyOf(latencias[rota], latencias[rota].length * 2);
+            }
+            latencias[rota][quantidades[rota]++] = nanos;
+        }
+    }
+
+    private Medidas executar(int clienteId, long ate) throws IOException, InterruptedException {
+        Random random = new Random(clienteId);
+        Medidas medidas = new Medidas();
+        int movimento = 0;
+        while (System.nanoTime() < ate) {
+            int sorteio = random.nextInt(100);
+            int rota = 0;
+            while (sorteio >= PESOS[rota]) {
+                sorteio -= PESOS[rota];
+                rota++;
+            }
+            HttpRequest requisicao = switch (rota) {
+                case 0 -> get("/estoque/locais?local=" + URLEncoder.encode(DadosSinteticos.nomeLocal(random.nextInt(LOCAIS)), StandardCharsets.UTF_8));
+                case 1 -> get("/estoque");
+                case 2 -> {
+                    // Um mês qualquer dos dez anos do histórico sintético, no máximo 200 registros
+                    int ano = 2015 + random.nextInt(10);
+                    int mes = 1 + random.nextInt(12);
+                    yield get(String.format("/historico?inicio=01/%02d/%d&fim=28/%02d/%d&limite=200", mes, ano, mes, ano));
+                }
+                case 3 -> get("/vencidos?dias=" + random.nextInt(60));
+                default -> {
+                    // Entrada e saída em um local só deste cliente, registradas juntas
+                    String local = "C" + clienteId + "_" + movimento++;
+                    int medId = 1 + random.nextInt(MEDICAMENTOS);
+                    String corpo = "[" + registro("Entrada", local, medId, 10) + "," + registro("Saída", local, medId, 4) + "]";
+                    yield HttpRequest.newBuilder(URI.create(base + "/registros"))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(corpo, StandardCharsets.UTF_8))
+                            .build();
+                }
+            };
+            long inicio = System.nanoTime();
+            HttpResponse<byte[]> resposta = cliente.send(requisicao, HttpResponse.BodyHandlers.ofByteArray());
+            medidas.adicionar(rota, System.nanoTime() - inicio);
+            if (resposta.statusCode() >= 300) {
+                medidas.erros++;
+            }
+        }
+        return medidas;
+    }
+
+    private HttpRequest get(String caminho) {
+        return HttpRequest.newBuilder(URI.create(base + caminho)).GET().build();
+    }
+
+    private static String registro(String natureza, String local, int medId, int quantidade) {
+        return "{\"data\":\"01/01/2025\",\"medId\":" + medId + ",\"natureza\":\"" + natureza + "\",\"local\":\"" + local
+                + "\",\"validade\":\"01/01/2099\",\"quantidade\":" + quantidade + "}";
+    }
+
+    private List<Medidas> rodada(int clientes, int segundos) throws Exception {
+        long ate = System.nanoTime() + segundos * 1_000_000_000L;
+        List<Medidas> medidas = new ArrayList<>(clientes);
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Medidas>> pendentes = new ArrayList<>(clientes);
+            for (int c = 0; c < clientes; c++) {
+                int clienteId = c;
+                pendentes.add(threads.submit(() -> executar(clienteId, ate)));
+            }
+            for (Future<Medidas> pendente : pendentes) {
+                medidas.add(pendente.get());
+            }
+        }
+        return medidas;
+    }
+
+    private static void relatorio(List<Medidas> medidas, int segundos) {
+        long total = 0;
+        int erros = 0;
+        long[] todas = new long[0];
+        System.out.printf("%-24s %10s %10s %10s %10s %10s%n", "rota", "req", "req/s", "p50 ms", "p99 ms", "max ms");
+        for (int rota = 0; rota < ROTAS.length; rota++) {
+            int quantidade = 0;
+            for (Medidas m : medidas) {
+                quantidade += m.quantidades[rota];
+            }
+            long[] latencias = new long[quantidade];
+            int posicao = 0;
+            for (Medidas m : medidas) {
+                System.arraycopy(m.latencias[rota], 0, latencias, posicao, m.quantidades[rota]);
+                posicao += m.quantidades[rota];
+            }
+            imprimir(ROTAS[rota], latencias, segundos);
+            total += quantidade;
+            todas = concatenar(todas, latencias);
+        }
+        for (Medidas m : medidas) {
+            erros += m.erros;
+        }
+        imprimir("total", todas, segundos);
+        System.out.println(total + " requisições, " + erros + " com erro");
+    }
+
+    private static void imprimir(String nome, long[] latencias, int segundos) {
+        Arrays.sort(latencias);
+        System.out.printf("%-24s %10d %10.0f %10.2f %10.2f %10.2f%n", nome, latencias.length,
+                latencias.length / (double) segundos, percentil(latencias, 50), percentil(latencias, 99),
+                latencias.length == 0 ? 0 : latencias[latencias.length - 1] / 1e6);
+    }
+
+    // Em milissegundos, pelo método do posto mais próximo
+    private static double percentil(long[] ordenadas, int p) {
+        if (ordenadas.length == 0) {
+            return 0;
+        }
+        int posicao = (int) Math.ceil(p / 100.0 * ordenadas.length) - 1;
+        return ordenadas[Math.max(0, posicao)] / 1e6;
+    }
+
+    private static long[] concatenar(long[] a, long[] b) {
+        long[] resultado = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, resultado, a.length, b.length);
+        return resultado;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int linhas = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int clientes = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int segundos = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        Path pasta = Files.createTempDirectory("servidor-carga");
+        ServidorEstoque servidor = null;
+        try {
+            System.out.println("Gerando " + linhas + " linhas de histórico...");
+            CadastroMedicamentos cadastro = new CadastroMedicamentos(pasta.resolve("med_diario.csv").toString());
+            cadastro.uploadCSV(DadosSinteticos.gerarCadastro(pasta, MEDICAMENTOS).toString());
+            Estoque estoque = new Estoque(cadastro, pasta.resolve("hist_diario.csv").toString());
+            estoque.uploadCSV(DadosSinteticos.gerarHistorico(pasta, linhas, LOCAIS, MEDICAMENTOS).toString());
+
+            servidor = new ServidorEstoque(estoque, cadastro, 0);
+            servidor.iniciar();
+            CargaServidor carga = new CargaServidor(servidor.getPorta());
+
+            System.out.println("Aquecimento de " + AQUECIMENTO_SEGUNDOS + " s com " + clientes + " clientes...");
+            carga.rodada(clientes, AQUECIMENTO_SEGUNDOS);
+            System.out.println("Medição de " + segundos + " s com " + clientes + " clientes...");
+            relatorio(carga.rodada(clientes, segundos), segundos);
+        } finally {
+            if (servidor != null) {
+                servidor.parar(0);
+            }
+            DadosSinteticos.apagar(pasta);
+        }
+    }
+}
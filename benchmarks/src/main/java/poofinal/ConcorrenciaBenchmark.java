@@ -0,0 +1,128 @@
+package poofinal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Vários terminais registrando no mesmo Estoque. Cada thread faz entradas e saídas em locais próprios;
+// uma parte dos movimentos (compartilhados, em %) vai para poucos locais usados por todas as threads.
+// O resultado é em movimentos por milissegundo. Até aqui só foi rodado em uma máquina de um núcleo: lá
+// o ganho com mais threads vem das gravações em disco divididas (POR_REGISTRO), e não diz nada sobre
+// locais diferentes registrando em paralelo, que precisa ser medido em uma máquina com vários núcleos.
+// Uso: java -jar benchmarks/target/benchmarks.jar ConcorrenciaBenchmark -p threads=1,2,4,8
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ConcorrenciaBenchmark {
+    private static final int MOVIMENTOS = 4096;
+    private static final int LOCAIS_COMPARTILHADOS = 16;
+
+    @Param({"100000"})
+    public int linhas;
+
+    @Param({"2000"})
+    public int locais;
+
+    @Param({"500"})
+    public int medicamentos;
+
+    @Param({"POR_REGISTRO", "AGRUPADO"})
+    public String politica;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"0", "25"})
+    public int compartilhados;
+
+    private Path pasta;
+    private CadastroMedicamentos cadastro;
+    private String historico;
+    private Estoque estoque;
+    private ExecutorService terminais;
+    private int rodada;
+
+    @Setup(Level.Trial)
+    public void gerar() throws IOException {
+        pasta = Files.createTempDirectory("concorrencia-bench");
+        cadastro = new CadastroMedicamentos(pasta.resolve("med_diario.csv").toString());
+        cadastro.uploadCSV(DadosSinteticos.gerarCadastro(pasta, medicamentos).toString());
+        historico = DadosSinteticos.gerarHistorico(pasta, linhas, locais, medicamentos).toString();
+        terminais = Executors.newFixedThreadPool(threads);
+    }
+
+    @Setup(Level.Iteration)
+    public void carregar() throws IOException {
+        Files.deleteIfExists(pasta.resolve("hist_diario.csv"));
+        estoque = new Estoque(cadastro, pasta.resolve("hist_diario.csv").toString());
+        estoque.setPoliticaSync(DiarioCSV.PoliticaSync.valueOf(politica), 100, 1000);
+        estoque.uploadCSV(historico);
+    }
+
+    @TearDown(Level.Trial)
+    public void apagar() throws IOException {
+        terminais.shutdown();
+        DadosSinteticos.apagar(pasta);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MOVIMENTOS)
+    public Estoque registrar() throws InterruptedException, ExecutionException {
+        int atual = rodada++;
+        List<Future<?>> pendentes = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            int terminal = t;
+            pendentes.add(terminais.submit(() -> movimentar(atual, terminal)));
+        }
+        for (Future<?> pendente : pendentes) {
+            pendente.get();
+        }
+        return estoque;
+    }
+
+    // Metade entradas, metade saídas, todas no mesmo dia e depois das datas do histórico sintético
+    private void movimentar(int atual, int terminal) {
+        Random random = new Random(31L * atual + terminal);
+        for (int i = 0; i < MOVIMENTOS / threads; i += 2) {
+            String local;
+            int medId;
+            if (random.nextInt(100) < compartilhados) {
+                int compartilhado = random.nextInt(LOCAIS_COMPARTILHADOS);
+                // Cada local compartilhado recebe sempre o mesmo lote, para que as entradas sejam aceitas
+                local = "S" + compartilhado;
+                medId = compartilhado % medicamentos + 1;
+            } else {
+                local = "T" + atual + "_" + terminal + "_" + i;
+                medId = random.nextInt(medicamentos) + 1;
+            }
+            estoque.novoRegistro(new Registro("01/01/2025", medId, "Entrada", local, "01/01/2027", 10), false);
+            estoque.novoRegistro(new Registro("01/01/2025", medId, "Saída", local, "01/01/2027", 4), false);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package poofinal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+// Gera catálogos e históricos sintéticos válidos: cada local recebe uma entrada e só volta a
+// receber outra depois de zerado por saídas, com as datas crescendo ao longo de dez anos.
+final class DadosSinteticos {
+    private static final DateTimeFormatter FORMATO = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final LocalDate INICIO = LocalDate.of(2015, 1, 1);
+    private static final int DIAS = 3650;
+
+    private DadosSinteticos() {
+    }
+
+    static Path gerarCadastro(Path pasta, int medicamentos) throws IOException {
+        Path arquivo = pasta.resolve("med_cadastro.csv");
+        try (BufferedWriter out = Files.newBufferedWriter(arquivo, StandardCharsets.UTF_8)) {
+            out.write("\"ID\",\"Nome\",\"Princípios Ativos\",\"Refrigerado\",\"Função\",\"Risco\",\"Dosagens\",\"Unidade\",\"Quantidade de Doses\",\"Marca\",\"Envase\"\n");
+            for (int id = 1; id <= medicamentos; id++) {
+                out.write("\"" + id + "\",\"Medicamento " + id + " 10mg 30 comprimidos\",\"Principio " + (id % 500)
+                        + "\",\"false\",\"Funcao " + (id % 40) + "\",\"Branca\",\"10.0\",\"mg\",\"30\",\"Marca " + (id % 25)
+                        + "\",\"Comprimido\"\n");
+            }
+        }
+        return arquivo;
+    }
+
+    static Path gerarHistorico(Path pasta, int linhas, int locais, int medicamentos) throws IOException {
+        Path arquivo = pasta.resolve("hist_estoque.csv");
+        Random random = new Random(42);
+        int[] medNoLocal = new int[locais];
+        int[] saldoNoLocal = new int[locais];
+        String[] validadeNoLocal = new String[locais];
+
+        try (BufferedWriter out = Files.newBufferedWriter(arquivo, StandardCharsets.UTF_8)) {
+            out.write("\"ID\",\"Data\",\"ID Medicamento\",\"Natureza\",\"Local\",\"Validade\",\"Quantidade\"\n");
+            for (int id = 1; id <= linhas; id++) {
+                LocalDate dia = INICIO.plusDays((long) id * DIAS / linhas);
+                int local = random.nextInt(locais);
+                String data = dia.format(FORMATO);
+                if (saldoNoLocal[local] == 0) {
+                    medNoLocal[local] = 1 + random.nextInt(medicamentos);
+                    saldoNoLocal[local] = 50 + random.nextInt(450);
+                    validadeNoLocal[local] = dia.plusDays(random.nextInt(1000) - 100).format(FORMATO);
+                    escrever(out, id, data, medNoLocal[local], "Entrada", local, validadeNoLocal[local], saldoNoLocal[local]);
+                } else {
+                    int quantidade = 1 + random.nextInt(saldoNoLocal[local]);
+                    saldoNoLocal[local] -= quantidade;
+                    escrever(out, id, data, medNoLocal[local], "Saída", local, validadeNoLocal[local], quantidade);
+                }
+            }
+        }
+        return arquivo;
+    }
+
+    static String nomeLocal(int local) {
+        return String.format("L%05d", local);
+    }
+
+    private static void escrever(BufferedWriter out, int id, String data, int medId, String natureza, int local,
+                                 String validade, int quantidade) throws IOException {
+        out.write("\"" + id + "\",\"" + data + "\",\"" + medId + "\",\"" + natureza + "\",\"" + nomeLocal(local)
+                + "\",\"" + validade + "\",\"" + quantidade + "\"\n");
+    }
+
+    static void apagar(Path pasta) throws IOException {
+        try (var arquivos = Files.walk(pasta)) {
+            arquivos.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package poofinal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Consultas do Estoque sobre um histórico sintético já carregado.
+// Uso: java -jar benchmarks/target/benchmarks.jar EstoqueBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EstoqueBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int linhas;
+
+    @Param({"2000"})
+    public int locais;
+
+    @Param({"500"})
+    public int medicamentos;
+
+    @Param({"false", "true"})
+    public boolean colunar;
+
+    private Path pasta;
+    private CadastroMedicamentos cadastro;
+    private Estoque estoque;
+    private int diaConsulta;
+    private List<Integer> medConsulta;
+    private int proximoMedId;
+
+    @Setup(Level.Trial)
+    public void carregar() throws IOException {
+        pasta = Files.createTempDirectory("estoque-bench");
+        cadastro = new CadastroMedicamentos(pasta.resolve("med_diario.csv").toString());
+        cadastro.uploadCSV(DadosSinteticos.gerarCadastro(pasta, medicamentos).toString());
+        estoque = new Estoque(cadastro, pasta.resolve("hist_diario.csv").toString(), colunar);
+        estoque.uploadCSV(DadosSinteticos.gerarHistorico(pasta, linhas, locais, medicamentos).toString());
+        diaConsulta = Datas.paraDia("15/06/2020");
+        medConsulta = List.of(medicamentos / 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void apagar() throws IOException {
+        DadosSinteticos.apagar(pasta);
+    }
+
+    @Benchmark
+    public Map<String, Map<Integer, Integer>> getEstoqueAtualPorLocal() {
+        return estoque.getEstoqueAtualPorLocal();
+    }
+
+    @Benchmark
+    public Map<String, Map<Integer, String>> getValidadePorLocal() {
+        return estoque.getValidadePorLocal();
+    }
+
+    @Benchmark
+    public List<Registro> verificarValidade() {
+        return estoque.verificarValidade();
+    }
+
+    @Benchmark
+    public Map<Integer, Map<String, Integer>> estoqueAtualPorLocal() {
+        return estoque.estoqueAtualPorLocal(diaConsulta, medConsulta);
+    }
+
+    @Benchmark
+    public Medicamento getMedicamento() {
+        proximoMedId = proximoMedId % medicamentos + 1;
+        return cadastro.getMedicamento(proximoMedId);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void saveCSV() {
+        estoque.saveCSV(pasta.resolve("exportado.csv").toString());
+    }
+}
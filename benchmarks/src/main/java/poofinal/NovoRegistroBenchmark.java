@@ -0,0 +1,78 @@
+package poofinal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Registro de movimentações sobre um histórico já carregado. Cada chamada faz uma entrada em um
+// local novo seguida da saída de parte dela, para que ambas passem pelas validações do Estoque.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class NovoRegistroBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int linhas;
+
+    @Param({"2000"})
+    public int locais;
+
+    @Param({"500"})
+    public int medicamentos;
+
+    @Param({"POR_REGISTRO", "AGRUPADO"})
+    public String politica;
+
+    private Path pasta;
+    private CadastroMedicamentos cadastro;
+    private String historico;
+    private Estoque estoque;
+    private int proximoLocal;
+
+    @Setup(Level.Trial)
+    public void gerar() throws IOException {
+        pasta = Files.createTempDirectory("registro-bench");
+        cadastro = new CadastroMedicamentos(pasta.resolve("med_diario.csv").toString());
+        cadastro.uploadCSV(DadosSinteticos.gerarCadastro(pasta, medicamentos).toString());
+        historico = DadosSinteticos.gerarHistorico(pasta, linhas, locais, medicamentos).toString();
+    }
+
+    @Setup(Level.Iteration)
+    public void carregar() throws IOException {
+        Files.deleteIfExists(pasta.resolve("hist_diario.csv"));
+        estoque = new Estoque(cadastro, pasta.resolve("hist_diario.csv").toString());
+        estoque.setPoliticaSync(DiarioCSV.PoliticaSync.valueOf(politica), 100, 1000);
+        estoque.uploadCSV(historico);
+    }
+
+    @TearDown(Level.Trial)
+    public void apagar() throws IOException {
+        DadosSinteticos.apagar(pasta);
+    }
+
+    @Benchmark
+    public Estoque novoRegistro() {
+        String local = "N" + proximoLocal++;
+        int medId = proximoLocal % medicamentos + 1;
+        estoque.novoRegistro(new Registro("01/01/2025", medId, "Entrada", local, "01/01/2027", 10), false);
+        estoque.novoRegistro(new Registro("02/01/2025", medId, "Saída", local, "01/01/2027", 4), false);
+        return estoque;
+    }
+}
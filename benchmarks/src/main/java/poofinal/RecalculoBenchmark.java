@@ -0,0 +1,73 @@
+package poofinal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Recálculo completo dos saldos a partir do histórico, sequencial (threads = 0) e paralelo.
+// Uso: java -jar benchmarks/target/benchmarks.jar RecalculoBenchmark -p threads=0,1,2,4,8
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class RecalculoBenchmark {
+    @Param({"1000000", "5000000"})
+    public int linhas;
+
+    @Param({"2000"})
+    public int locais;
+
+    @Param({"500"})
+    public int medicamentos;
+
+    @Param({"false", "true"})
+    public boolean colunar;
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int threads;
+
+    private Path pasta;
+    private Estoque estoque;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void carregar() throws IOException {
+        pasta = Files.createTempDirectory("recalculo-bench");
+        CadastroMedicamentos cadastro = new CadastroMedicamentos(pasta.resolve("med_diario.csv").toString());
+        cadastro.uploadCSV(DadosSinteticos.gerarCadastro(pasta, medicamentos).toString());
+        estoque = new Estoque(cadastro, pasta.resolve("hist_diario.csv").toString(), colunar);
+        estoque.uploadCSV(DadosSinteticos.gerarHistorico(pasta, linhas, locais, medicamentos).toString());
+        pool = threads > 0 ? new ForkJoinPool(threads) : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void apagar() throws IOException {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        DadosSinteticos.apagar(pasta);
+    }
+
+    @Benchmark
+    public RecalculoSaldos recalcularSaldos() {
+        return pool == null ? estoque.recalcularSaldos() : estoque.recalcularSaldos(pool);
+    }
+}